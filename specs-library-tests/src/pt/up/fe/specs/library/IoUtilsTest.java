@@ -5,9 +5,25 @@ package pt.up.fe.specs.library;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
 import org.junit.Test;
 
 import pt.up.fe.specs.library.IoUtils;
+import pt.up.fe.specs.library.io.MappedFile;
+import pt.up.fe.specs.library.io.ResourceCache;
+import pt.up.fe.specs.library.utilities.LineReader;
 
 /**
  * @author JoaoBispo
@@ -20,4 +36,121 @@ public class IoUtilsTest {
 		assertEquals("file_contents", IoUtils.getResource("ioutils/iotest.txt"));
 	}
 
+	@Test
+	public void testReadStream() {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			builder.append("line ").append(i).append(" - ação\n");
+		}
+		String contents = builder.toString();
+
+		// Available is 0, forces buffer to grow
+		ByteArrayInputStream stream = new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8)) {
+			@Override
+			public synchronized int available() {
+				return 0;
+			}
+		};
+
+		assertEquals(contents, IoUtils.read(stream));
+		assertEquals("ascii", IoUtils.read(new ByteArrayInputStream("ascii".getBytes(StandardCharsets.UTF_8))));
+	}
+
+	@Test
+	public void testResourceCache() {
+		ResourceCache cache = new ResourceCache(1024);
+		IoUtils.setResourceCache(cache);
+		try {
+			assertEquals("file_contents", IoUtils.getResource("ioutils/iotest.txt"));
+			assertEquals("file_contents", IoUtils.getResource("ioutils/iotest.txt"));
+		} finally {
+			IoUtils.setResourceCache(null);
+		}
+
+		assertEquals(1, cache.getStats().hitCount());
+		assertEquals(1, cache.getStats().missCount());
+	}
+
+	@Test
+	public void testResourceCacheNearLimit() {
+		// "file_contents" has 13 bytes
+		ResourceCache cache = new ResourceCache(16);
+		assertEquals("file_contents", cache.getResource("ioutils/iotest.txt"));
+		assertEquals("file_contents", cache.getResource("ioutils/iotest.txt"));
+
+		assertEquals(1, cache.getStats().hitCount());
+		assertEquals(0, cache.getStats().evictionCount());
+		assertEquals(13, cache.getCachedBytes());
+	}
+
+	@Test
+	public void testReadMappedEmpty() throws IOException {
+		File file = File.createTempFile("mapped", ".txt");
+		file.deleteOnExit();
+
+		MappedFile mappedFile = IoUtils.readMapped(file);
+		assertEquals(0, mappedFile.size());
+		assertEquals(0, mappedFile.getBuffer(0, 0).remaining());
+		assertEquals("", mappedFile.decode(0, 0, StandardCharsets.UTF_8));
+		assertEquals("", mappedFile.asCharSequence().toString());
+	}
+
+	@Test
+	public void testStreamFilesRecursive() throws IOException {
+		Path root = Files.createTempDirectory("stream");
+		Path sub = Files.createDirectories(root.resolve("sub"));
+		Path empty = Files.createDirectories(root.resolve("empty"));
+		Path[] files = { root.resolve("a.txt"), root.resolve("b.md"), sub.resolve("c.txt") };
+		try {
+			for (Path file : files) {
+				Files.write(file, new byte[0]);
+			}
+
+			try (Stream<Path> stream = IoUtils.streamFilesRecursive(root.toFile(), "txt")) {
+				List<Path> found = stream.sorted().collect(Collectors.toList());
+				assertEquals(Arrays.asList(files[0], files[2]), found);
+			}
+
+			// Stops early, closing the folders still open
+			try (Stream<Path> stream = IoUtils.streamFilesRecursive(root.toFile(), "txt")) {
+				Optional<Path> first = stream.findFirst();
+				assertEquals(true, first.isPresent());
+			}
+
+			try (Stream<Path> stream = IoUtils.streamFolders(root.toFile())) {
+				assertEquals(Arrays.asList(empty, sub), stream.sorted().collect(Collectors.toList()));
+			}
+		} finally {
+			for (Path file : files) {
+				Files.delete(file);
+			}
+			Files.delete(sub);
+			Files.delete(empty);
+			Files.delete(root);
+		}
+	}
+
+	@Test
+	public void testReadCompressed() throws IOException {
+		File gzFile = File.createTempFile("compressed", ".txt.gz");
+		gzFile.deleteOnExit();
+		File txtFile = File.createTempFile("compressed", ".txt");
+		txtFile.deleteOnExit();
+
+		String contents = "line 1\nline 2\n";
+		assertEquals(true, IoUtils.write(contents, gzFile));
+		assertEquals(contents, IoUtils.read(gzFile));
+
+		// Gzip files are detected by their header, regardless of the extension
+		Files.copy(gzFile.toPath(), txtFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		assertEquals(contents, IoUtils.read(txtFile));
+		try (Stream<String> lines = LineReader.stream(txtFile, false)) {
+			assertEquals(Arrays.asList("line 1", "line 2"), lines.collect(Collectors.toList()));
+		}
+
+		// Written according to the extension, not to the previous contents
+		assertEquals(true, IoUtils.write(contents, txtFile));
+		assertEquals(contents, new String(Files.readAllBytes(txtFile.toPath()), StandardCharsets.UTF_8));
+	}
+
 }
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class XmlUtilsTest {
+
+	private static File newXml(String xml) throws IOException {
+		File file = File.createTempFile("xmlutils", ".xml");
+		file.deleteOnExit();
+		Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private static File newConfig(String name) throws IOException {
+		return newXml("<root><cfg name=\"" + name + "\"/></root>");
+	}
+
+	@Test
+	public void testReuseAfterError() throws IOException {
+		File first = newConfig("first");
+		File malformed = newXml("<root><cfg></root>");
+		File second = newConfig("second");
+
+		assertEquals("first", XmlUtils.getAttribute(XmlUtils.parseXmlRoot(first), "cfg", "name"));
+		assertNull(XmlUtils.parseXmlRoot(malformed));
+
+		// The builder of this thread is reset after the failed parse
+		assertEquals("second", XmlUtils.getAttribute(XmlUtils.parseXmlRoot(second), "cfg", "name"));
+	}
+
+	@Test
+	public void testConcurrentParses() throws Exception {
+		List<File> files = new ArrayList<>();
+		for (int i = 0; i < 40; i++) {
+			files.add(newConfig("file" + i));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<String>> names = new ArrayList<>();
+			for (File file : files) {
+				names.add(executor.submit(() -> XmlUtils.getAttribute(XmlUtils.parseXmlRoot(file), "cfg", "name")));
+			}
+
+			for (int i = 0; i < files.size(); i++) {
+				assertEquals("file" + i, names.get(i).get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testSetFactory() throws IOException {
+		File file = newXml("<p:root xmlns:p=\"urn:test\"><p:cfg name=\"a\"/></p:root>");
+		DocumentBuilderFactory previous = XmlUtils.getDocumentBuilderFactory();
+
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		XmlUtils.setDocumentBuilderFactory(factory);
+		try {
+			assertSame(factory, XmlUtils.getDocumentBuilderFactory());
+
+			// The builder of this thread is replaced when the factory changes
+			Document document = XmlUtils.parseXmlRoot(file);
+			assertEquals("urn:test", document.getDocumentElement().getNamespaceURI());
+		} finally {
+			XmlUtils.setDocumentBuilderFactory(previous);
+		}
+
+		assertNull(XmlUtils.parseXmlRoot(file).getDocumentElement().getNamespaceURI());
+	}
+}
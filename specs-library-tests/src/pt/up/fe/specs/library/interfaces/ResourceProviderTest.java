@@ -0,0 +1,90 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.interfaces;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import pt.up.fe.specs.library.IoUtils;
+
+public class ResourceProviderTest {
+
+	private static final List<ResourceProvider> RESOURCES = Arrays.asList(() -> "ioutils/iotest.txt",
+			() -> "ioutils/iotest2.txt");
+
+	private File folder;
+
+	@Before
+	public void setUp() throws IOException {
+		folder = Files.createTempDirectory("resources").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : folder.listFiles()) {
+			file.delete();
+		}
+		folder.delete();
+	}
+
+	private void assertWritten(List<File> files) {
+		assertEquals(Arrays.asList(new File(folder, "iotest.txt"), new File(folder, "iotest2.txt")), files);
+		assertEquals("file_contents", IoUtils.read(files.get(0)));
+		assertEquals("other_contents", IoUtils.read(files.get(1)));
+	}
+
+	@Test
+	public void testWrite() {
+		assertWritten(ResourceProvider.write(RESOURCES, folder));
+	}
+
+	@Test
+	public void testWriteFromBusyExecutor() throws InterruptedException, ExecutionException, TimeoutException {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			// The only thread of the executor is the one waiting for the writes
+			List<File> files = executor.submit(() -> ResourceProvider.write(RESOURCES, folder, executor))
+					.get(10, TimeUnit.SECONDS);
+
+			assertWritten(files);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testMissingResource() {
+		try {
+			ResourceProvider.write(Arrays.asList(RESOURCES.get(0), () -> "ioutils/missing.txt"), folder);
+			fail("Expected a RuntimeException");
+		} catch (RuntimeException e) {
+			assertEquals("Could not write file '" + new File(folder, "missing.txt") + "'", e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class AsyncIoUtilsTest {
+
+	@Test
+	public void testWriteAndRead() throws IOException {
+		File file = File.createTempFile("async", ".txt");
+		file.deleteOnExit();
+
+		String contents = AsyncIoUtils.write("async contents", file)
+				.thenCompose(written -> {
+					assertTrue(written);
+					return AsyncIoUtils.read(file);
+				})
+				.join();
+
+		assertEquals("async contents", contents);
+	}
+
+	@Test
+	public void testGivenExecutor() throws IOException {
+		File file = File.createTempFile("async", ".txt");
+		file.deleteOnExit();
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			assertTrue(AsyncIoUtils.write("contents", file, executor).join());
+			assertEquals("contents", AsyncIoUtils.read(file, executor).join());
+			assertEquals("file_contents", AsyncIoUtils.getResource("ioutils/iotest.txt", executor).join());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testGetResource() {
+		assertEquals("file_contents", AsyncIoUtils.getResource("ioutils/iotest.txt").join());
+	}
+
+	@Test
+	public void testReadFailure() throws IOException {
+		File file = File.createTempFile("async", ".txt");
+		file.delete();
+
+		// The unchecked exception of IoUtils.read completes the future
+		CompletableFuture<String> future = AsyncIoUtils.read(file);
+		try {
+			future.join();
+			fail("Expected a CompletionException");
+		} catch (CompletionException e) {
+			assertTrue(e.getCause() instanceof RuntimeException);
+		}
+
+		assertTrue(future.isCompletedExceptionally());
+	}
+}
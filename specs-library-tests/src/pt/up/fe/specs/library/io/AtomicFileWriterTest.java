@@ -0,0 +1,135 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import pt.up.fe.specs.library.io.AtomicFileWriter.SyncPolicy;
+
+public class AtomicFileWriterTest {
+
+	private Path folder;
+	private Path target;
+
+	@Before
+	public void setUp() throws IOException {
+		folder = Files.createTempDirectory("atomic");
+		target = folder.resolve("target.txt");
+		Files.write(target, "original".getBytes(StandardCharsets.UTF_8));
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for (String name : folder.toFile().list()) {
+			Files.delete(folder.resolve(name));
+		}
+		Files.delete(folder);
+	}
+
+	private String readTarget() throws IOException {
+		return new String(Files.readAllBytes(target), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * 
+	 * @return the names of the files in the folder, so that leftover temporary
+	 *         files are detected
+	 */
+	private String[] listFolder() {
+		return folder.toFile().list();
+	}
+
+	@Test
+	public void testReplaceOnClose() throws IOException {
+		// Spans several buffers, with non-ASCII characters
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 100_000; i++) {
+			builder.append("line ").append(i).append(" - ação\n");
+		}
+		String contents = builder.toString();
+
+		AtomicFileWriter writer = AtomicFileWriter.open(target.toFile(), SyncPolicy.FILE_AND_FOLDER);
+		writer.write(contents, 0, 1000);
+		writer.flush();
+		writer.write(contents.substring(1000));
+
+		// Target is only replaced on close
+		assertEquals("original", readTarget());
+
+		writer.close();
+		assertEquals(contents, readTarget());
+		assertArrayEquals(new String[] { "target.txt" }, listFolder());
+
+		// Closing twice has no effect
+		writer.close();
+		assertEquals(contents, readTarget());
+	}
+
+	@Test
+	public void testAbort() throws IOException {
+		AtomicFileWriter writer = AtomicFileWriter.open(target.toFile(), SyncPolicy.NONE);
+		writer.write("partial contents");
+		writer.flush();
+		writer.abort();
+
+		assertEquals("original", readTarget());
+		assertArrayEquals(new String[] { "target.txt" }, listFolder());
+
+		try {
+			writer.write("more contents");
+			fail("Expected an IOException");
+		} catch (IOException e) {
+			// Expected
+		}
+
+		// Close after abort does not replace the target
+		writer.close();
+		assertEquals("original", readTarget());
+	}
+
+	@Test
+	public void testFailedMove() throws IOException {
+		// A non-empty folder cannot be replaced by a file
+		Path blocked = folder.resolve("blocked");
+		Files.createDirectory(blocked);
+		Files.write(blocked.resolve("inner.txt"), new byte[0]);
+
+		AtomicFileWriter writer = AtomicFileWriter.open(blocked.toFile(), SyncPolicy.FILE);
+		writer.write("new contents");
+		try {
+			writer.close();
+			fail("Expected an IOException");
+		} catch (IOException e) {
+			// Expected
+		}
+
+		// Original is untouched, and the temporary file was deleted
+		assertArrayEquals(new String[] { "inner.txt" }, blocked.toFile().list());
+		assertEquals(2, listFolder().length);
+		assertEquals("original", readTarget());
+
+		Files.delete(blocked.resolve("inner.txt"));
+	}
+}
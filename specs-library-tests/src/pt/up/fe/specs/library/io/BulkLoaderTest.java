@@ -0,0 +1,155 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import pt.up.fe.specs.library.IoUtils;
+import pt.up.fe.specs.library.io.BulkLoader.Loaded;
+
+public class BulkLoaderTest {
+
+	private static List<File> createFiles(int numFiles) throws IOException {
+		List<File> files = new ArrayList<>();
+		for (int i = 0; i < numFiles; i++) {
+			File file = File.createTempFile("bulk", ".txt");
+			file.deleteOnExit();
+			Files.write(file.toPath(), ("file " + i).getBytes(Charset.defaultCharset()));
+			files.add(file);
+		}
+
+		return files;
+	}
+
+	private static List<String> expectedContents(int numFiles) {
+		List<String> contents = new ArrayList<>();
+		for (int i = 0; i < numFiles; i++) {
+			contents.add("file " + i);
+		}
+
+		return contents;
+	}
+
+	@Test
+	public void testReadInOrder() throws IOException {
+		List<File> files = createFiles(50);
+		Random random = new Random(0);
+
+		// Files complete out of order
+		List<String> contents = new BulkLoader(8).load(files, file -> {
+			sleep(random.nextInt(5));
+			return IoUtils.read(file);
+		});
+
+		assertEquals(expectedContents(50), contents);
+		assertEquals(expectedContents(3), new BulkLoader().read(files.subList(0, 3)));
+		assertEquals(Arrays.asList(Arrays.asList("file 0")), new BulkLoader().readLines(files.subList(0, 1)));
+	}
+
+	@Test
+	public void testConcurrencyLimit() throws IOException {
+		List<File> files = createFiles(30);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+
+		new BulkLoader(3).load(files, file -> {
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			sleep(2);
+			running.decrementAndGet();
+			return file;
+		});
+
+		assertTrue(maxRunning.get() <= 3);
+	}
+
+	@Test
+	public void testErrorPropagation() throws IOException {
+		List<File> files = createFiles(10);
+		File failing = files.get(4);
+		IllegalStateException error = new IllegalStateException("failed");
+		AtomicInteger started = new AtomicInteger();
+
+		try {
+			new BulkLoader(1).load(files, file -> {
+				started.incrementAndGet();
+				if (file.equals(failing)) {
+					throw error;
+				}
+				return file;
+			});
+			fail("Expected a RuntimeException");
+		} catch (RuntimeException e) {
+			assertEquals("Could not load file '" + failing + "'", e.getMessage());
+			assertSame(error, e.getCause());
+		}
+
+		// No more files are started after the failure
+		assertEquals(5, started.get());
+	}
+
+	@Test
+	public void testMissingFile() throws IOException {
+		List<File> files = createFiles(2);
+		File missing = new File(files.get(0).getPath() + ".missing");
+
+		try {
+			new BulkLoader().read(Arrays.asList(files.get(0), missing, files.get(1)));
+			fail("Expected a RuntimeException");
+		} catch (RuntimeException e) {
+			assertEquals("Could not load file '" + missing + "'", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testCloseStream() throws IOException {
+		List<File> files = createFiles(20);
+		AtomicInteger started = new AtomicInteger();
+
+		try (Stream<Loaded<File>> stream = new BulkLoader(1).stream(files, file -> {
+			started.incrementAndGet();
+			sleep(5);
+			return file;
+		})) {
+			assertEquals(1, stream.limit(1).count());
+		}
+
+		// Closing stops starting new files
+		sleep(50);
+		assertTrue(started.get() < files.size());
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.io;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileWalkerTest {
+
+	private Path root;
+
+	@Before
+	public void createTree() throws IOException {
+		root = Files.createTempDirectory("walker");
+
+		createFile("z.txt");
+		createFile("b.txt");
+		createFile("c.md");
+		Files.createDirectories(root.resolve("sub2/deep"));
+		createFile("sub2/x.txt");
+		createFile("sub2/deep/w.txt");
+		Files.createDirectories(root.resolve("sub1"));
+		createFile("sub1/y.txt");
+		createFile("sub1/a.md");
+	}
+
+	private void createFile(String name) throws IOException {
+		Files.write(root.resolve(name), name.getBytes());
+	}
+
+	@After
+	public void deleteTree() throws IOException {
+		// Does not follow links
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private List<String> relativize(List<Path> files) {
+		return files.stream()
+				.map(file -> root.relativize(file).toString().replace('\\', '/'))
+				.collect(Collectors.toList());
+	}
+
+	@Test
+	public void testSortedOrder() {
+		List<Path> files = new FileWalker().getFiles(root, path -> true);
+
+		// Files of a folder first, then the files of each sub-folder, by name
+		assertEquals(Arrays.asList("b.txt", "c.md", "z.txt", "sub1/a.md", "sub1/y.txt", "sub2/x.txt",
+				"sub2/deep/w.txt"), relativize(files));
+
+		// Same result on every call
+		assertEquals(files, new FileWalker().getFiles(root, path -> true));
+	}
+
+	@Test
+	public void testFilter() {
+		List<Path> files = new FileWalker().getFiles(root, path -> path.toString().endsWith(".txt"));
+
+		assertEquals(Arrays.asList("b.txt", "z.txt", "sub1/y.txt", "sub2/x.txt", "sub2/deep/w.txt"),
+				relativize(files));
+	}
+
+	@Test
+	public void testWalkDepthFirst() {
+		try (Stream<Path> stream = new FileWalker().walkFiles(root, path -> path.toString().endsWith(".txt"))) {
+			// Sub-folders are walked as soon as they are found
+			assertEquals(Arrays.asList("b.txt", "sub1/y.txt", "sub2/deep/w.txt", "sub2/x.txt", "z.txt"),
+					relativize(stream.collect(Collectors.toList())));
+		}
+	}
+
+	@Test
+	public void testWalkMaxDepth() {
+		try (Stream<Path> stream = new FileWalker().walk(root, 1, (path, attrs) -> attrs.isDirectory())) {
+			assertEquals(Arrays.asList("sub1", "sub2"), relativize(stream.collect(Collectors.toList())));
+		}
+	}
+
+	@Test
+	public void testLinkCycle() throws IOException {
+		Path link = root.resolve("sub1/loop");
+		try {
+			Files.createSymbolicLink(link, root);
+		} catch (UnsupportedOperationException | IOException e) {
+			// Links are not supported in all file systems
+			return;
+		}
+
+		List<String> expected = Arrays.asList("b.txt", "z.txt", "sub1/y.txt", "sub2/x.txt", "sub2/deep/w.txt");
+		assertEquals(expected, relativize(new FileWalker().getFiles(root, path -> path.toString().endsWith(".txt"))));
+
+		try (Stream<Path> stream = new FileWalker().walkFiles(root, path -> true)) {
+			assertEquals(7, stream.count());
+		}
+	}
+}
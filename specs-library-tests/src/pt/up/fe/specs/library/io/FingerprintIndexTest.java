@@ -0,0 +1,112 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import pt.up.fe.specs.library.io.FingerprintIndex.Changes;
+
+public class FingerprintIndexTest {
+
+	/**
+	 * Names with the field and line separators of the index, and the escape
+	 * character
+	 */
+	private static final String[] NAMES = { "plain.txt", "tab\there.txt", "new\nline.txt", "carriage\rreturn.txt",
+			"back\\slash.txt", "back\\tslash.txt" };
+
+	private File root;
+	private File indexFile;
+	private List<File> files;
+
+	@Before
+	public void setUp() throws IOException {
+		root = Files.createTempDirectory("fingerprint").toFile();
+		indexFile = File.createTempFile("fingerprint", ".index");
+		indexFile.delete();
+
+		files = new ArrayList<>();
+		for (String name : NAMES) {
+			File file = new File(root, name);
+			try {
+				Files.write(file.toPath(), name.getBytes(StandardCharsets.UTF_8));
+			} catch (IOException e) {
+				// Not all file systems accept these names
+				continue;
+			}
+			files.add(file);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : root.listFiles()) {
+			file.delete();
+		}
+		root.delete();
+		indexFile.delete();
+	}
+
+	@Test
+	public void testRoundTrip() {
+		FingerprintIndex index = FingerprintIndex.create(root, files, true, null);
+		assertEquals(files.size(), index.getFingerprints().size());
+
+		index.write(indexFile);
+		FingerprintIndex read = FingerprintIndex.read(indexFile, root);
+
+		assertEquals(index.getFingerprints(), read.getFingerprints());
+		assertTrue(index.getChanges(read).isEmpty());
+	}
+
+	@Test
+	public void testUpdate() throws IOException {
+		Changes changes = FingerprintIndex.update(root, "txt", indexFile, true);
+		assertEquals(sorted(files), sorted(changes.getAdded()));
+		assertTrue(changes.getModified().isEmpty());
+
+		// Unchanged
+		assertTrue(FingerprintIndex.update(root, "txt", indexFile, true).isEmpty());
+
+		File modified = files.get(files.size() - 1);
+		Files.write(modified.toPath(), "new contents".getBytes(StandardCharsets.UTF_8));
+		File deleted = files.get(1);
+		deleted.delete();
+
+		changes = FingerprintIndex.update(root, "txt", indexFile, true);
+		assertEquals(Arrays.asList(modified), changes.getModified());
+		assertEquals(Arrays.asList(deleted), changes.getDeleted());
+		assertTrue(changes.getAdded().isEmpty());
+	}
+
+	private static List<File> sorted(List<File> files) {
+		List<File> sorted = new ArrayList<>(files);
+		Collections.sort(sorted);
+		return sorted;
+	}
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class FolderDeleterTest {
+
+	/**
+	 * Creates 3 files (10 bytes each) in the folder and in each of its 2
+	 * sub-folders, and a folder with a link to the root.
+	 */
+	private static Path createTree() throws IOException {
+		Path root = Files.createTempDirectory("deleter");
+		Path[] folders = { root, root.resolve("sub1"), root.resolve("sub1/sub2") };
+		for (Path folder : folders) {
+			Files.createDirectories(folder);
+			for (int i = 0; i < 3; i++) {
+				Files.write(folder.resolve("file" + i), new byte[10]);
+			}
+		}
+
+		try {
+			Files.createSymbolicLink(root.resolve("sub1/link"), root);
+		} catch (UnsupportedOperationException | IOException e) {
+			// Links are not supported in all file systems, use a file instead
+			Files.write(root.resolve("sub1/link"), new byte[0]);
+		}
+
+		return root;
+	}
+
+	private static void assertDeleted(Path root, FolderDeleter deleter) throws IOException {
+		// The size of a link is the length of its target
+		long linkSize = Files.readAttributes(root.resolve("sub1/link"), BasicFileAttributes.class,
+				LinkOption.NOFOLLOW_LINKS).size();
+
+		DeleteStats stats = deleter.deleteContents(root);
+		assertTrue(stats.toString(), stats.isSuccess());
+		// The link is not followed, it counts as a file
+		assertEquals(10, stats.getFilesDeleted());
+		assertEquals(2, stats.getFoldersDeleted());
+		assertEquals(90 + linkSize, stats.getBytesFreed());
+
+		assertTrue(Files.exists(root));
+		assertEquals(0, root.toFile().list().length);
+		Files.delete(root);
+	}
+
+	@Test
+	public void testSequential() throws IOException {
+		Path root = createTree();
+		assertDeleted(root, new FolderDeleter(1));
+	}
+
+	@Test
+	public void testParallel() throws IOException {
+		Path root = createTree();
+		assertDeleted(root, new FolderDeleter(4));
+	}
+
+	@Test
+	public void testSharedPool() throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			FolderDeleter deleter = new FolderDeleter(pool);
+
+			Path root = createTree();
+			assertDeleted(root, deleter);
+
+			root = createTree();
+			assertDeleted(root, deleter);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testMissingFolder() throws IOException {
+		Path root = Files.createTempDirectory("deleter");
+		Files.delete(root);
+
+		DeleteStats stats = new FolderDeleter(1).deleteContents(root);
+		assertEquals(1, stats.getFailures());
+		assertEquals(0, stats.getFilesDeleted());
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FolderListingCacheTest {
+
+	/**
+	 * Events are delivered asynchronously, and some WatchService
+	 * implementations poll the file system
+	 */
+	private static final long EVENT_TIMEOUT_MS = 30_000;
+
+	private Path root;
+	private FolderListingCache cache;
+
+	@Before
+	public void setUp() throws IOException {
+		root = Files.createTempDirectory("listing");
+		Files.createDirectories(root.resolve("sub"));
+		Files.write(root.resolve("a.txt"), new byte[0]);
+		Files.write(root.resolve("sub/b.txt"), new byte[0]);
+
+		cache = new FolderListingCache();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		cache.close();
+
+		// Does not follow links
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private List<File> files(String... names) {
+		File[] files = new File[names.length];
+		for (int i = 0; i < names.length; i++) {
+			files[i] = new File(root.toFile(), names[i]);
+		}
+
+		return Arrays.asList(files);
+	}
+
+	/**
+	 * Calls getFilesRecursive until the result is accepted, or the timeout
+	 * expires.
+	 */
+	private List<File> waitFor(Predicate<List<File>> condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + EVENT_TIMEOUT_MS;
+
+		List<File> files = cache.getFilesRecursive(root.toFile(), "txt");
+		while (!condition.test(files) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+			files = cache.getFilesRecursive(root.toFile(), "txt");
+		}
+
+		return files;
+	}
+
+	@Test
+	public void testHits() {
+		assertEquals(files("a.txt", "sub/b.txt"), cache.getFilesRecursive(root.toFile(), "txt"));
+		assertEquals(files("a.txt", "sub/b.txt"), cache.getFilesRecursive(root.toFile(), "txt"));
+		assertEquals(files("sub"), cache.getFolders(root.toFile()));
+
+		// Counted once per call, regardless of the number of folders
+		assertEquals(1, cache.getMisses());
+		assertEquals(2, cache.getHits());
+	}
+
+	@Test
+	public void testCreateAndDelete() throws IOException, InterruptedException {
+		assertEquals(files("a.txt", "sub/b.txt"), cache.getFilesRecursive(root.toFile(), "txt"));
+
+		Files.write(root.resolve("sub/c.txt"), new byte[0]);
+		List<File> files = waitFor(result -> result.size() == 3);
+		assertEquals(files("a.txt", "sub/b.txt", "sub/c.txt"), files);
+
+		Files.delete(root.resolve("a.txt"));
+		files = waitFor(result -> result.size() == 2);
+		assertEquals(files("sub/b.txt", "sub/c.txt"), files);
+
+		Files.delete(root.resolve("sub/b.txt"));
+		Files.delete(root.resolve("sub/c.txt"));
+		Files.delete(root.resolve("sub"));
+		files = waitFor(List::isEmpty);
+		assertEquals(files(), files);
+		assertEquals(files(), cache.getFolders(root.toFile()));
+
+		assertTrue(cache.getInvalidations() >= 3);
+	}
+
+	@Test
+	public void testInvalidateAll() throws IOException {
+		assertEquals(files("a.txt", "sub/b.txt"), cache.getFilesRecursive(root.toFile(), "txt"));
+
+		Files.write(root.resolve("c.txt"), new byte[0]);
+		cache.invalidateAll();
+		assertEquals(files("a.txt", "c.txt", "sub/b.txt"), cache.getFilesRecursive(root.toFile(), "txt"));
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public void testLinkCycle() throws IOException {
+		try {
+			Files.createSymbolicLink(root.resolve("sub/loop"), root);
+		} catch (UnsupportedOperationException | IOException e) {
+			// Links are not supported in all file systems
+			return;
+		}
+
+		assertEquals(files("a.txt", "sub/b.txt"), cache.getFilesRecursive(root.toFile(), "txt"));
+		assertEquals(files("sub/loop"), cache.getFolders(root.resolve("sub").toFile()));
+	}
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+public class ParallelGzipOutputStreamTest {
+
+	@Test
+	public void testMultiMemberRoundTrip() throws IOException {
+		// Compressible data, spanning several blocks and ending in a partial
+		// block
+		Random random = new Random(0);
+		byte[] data = new byte[10 * 1000 + 123];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) ('a' + random.nextInt(4));
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try (ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(bytes, executor, 1000, 3)) {
+			gzip.write(data, 0, 5000);
+			gzip.flush();
+			for (int i = 5000; i < 5500; i++) {
+				gzip.write(data[i]);
+			}
+			gzip.write(data, 5500, data.length - 5500);
+		} finally {
+			executor.shutdown();
+		}
+
+		assertArrayEquals(data, gunzip(bytes.toByteArray()));
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new ParallelGzipOutputStream(bytes).close();
+
+		assertArrayEquals(new byte[0], gunzip(bytes.toByteArray()));
+	}
+
+	@Test
+	public void testWriteAfterClose() throws IOException {
+		ParallelGzipOutputStream gzip = new ParallelGzipOutputStream(new ByteArrayOutputStream());
+		gzip.close();
+
+		try {
+			gzip.write(1);
+			fail("Expected an exception");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+
+	private static byte[] gunzip(byte[] compressed) throws IOException {
+		try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+			return ByteStreams.toByteArray(input);
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import pt.up.fe.specs.library.IoUtils;
+
+public class PathRelativizerTest {
+
+	private File root;
+	private File base;
+	private File other;
+
+	@Before
+	public void setUp() throws IOException {
+		root = Files.createTempDirectory("relativizer").toFile();
+		base = new File(root, "base");
+		other = new File(root, "other");
+		new File(base, "sub").mkdirs();
+		other.mkdirs();
+		Files.write(new File(base, "a.txt").toPath(), new byte[0]);
+	}
+
+	@After
+	public void tearDown() {
+		new File(base, "a.txt").delete();
+		new File(base, "sub").delete();
+		base.delete();
+		other.delete();
+		root.delete();
+	}
+
+	@Test
+	public void testSamePath() {
+		PathRelativizer relativizer = new PathRelativizer(base);
+
+		assertEquals("", relativizer.getRelativePath(base));
+		assertEquals("", relativizer.getRelativePath(new File(base, ".")));
+		assertEquals("", relativizer.getRelativePath(new File(base, "sub/..")));
+	}
+
+	@Test
+	public void testInsideBase() {
+		PathRelativizer relativizer = new PathRelativizer(base);
+
+		assertEquals("a.txt", relativizer.getRelativePath(new File(base, "a.txt")));
+		assertEquals("sub/b.txt", relativizer.getRelativePath(new File(base, "sub/b.txt")));
+		assertEquals("a.txt", relativizer.getRelativePath(new File(base, "sub/../a.txt")));
+	}
+
+	@Test
+	public void testParentFolders() {
+		PathRelativizer relativizer = new PathRelativizer(new File(base, "sub"));
+
+		assertEquals("..", relativizer.getRelativePath(base));
+		assertEquals("../a.txt", relativizer.getRelativePath(new File(base, "a.txt")));
+		assertEquals("../../other/c.txt", relativizer.getRelativePath(new File(other, "c.txt")));
+		assertEquals("../..", relativizer.getRelativePath(new File(base, "sub/../..")));
+	}
+
+	@Test
+	public void testFileAsBase() throws IOException {
+		// The parent of a file is used as base
+		PathRelativizer relativizer = new PathRelativizer(new File(base, "a.txt"));
+
+		assertEquals(base.getCanonicalFile().toPath(), relativizer.getBase());
+		assertEquals("sub/b.txt", relativizer.getRelativePath(new File(base, "sub/b.txt")));
+	}
+
+	@Test
+	public void testSameAsIoUtils() {
+		PathRelativizer relativizer = new PathRelativizer(new File(base, "sub"));
+
+		for (File file : new File[] { new File(base, "a.txt"), new File(other, "c.txt"),
+				new File(base, "sub/d/e.txt") }) {
+			assertEquals(IoUtils.getRelativePath(file, new File(base, "sub")),
+					relativizer.getRelativePath(file));
+		}
+	}
+
+	@Test
+	public void testDifferentRoots() {
+		File[] roots = File.listRoots();
+		if (roots.length < 2) {
+			// Only one root in this platform (e.g., Unix)
+			return;
+		}
+
+		PathRelativizer relativizer = new PathRelativizer(roots[0]);
+		try {
+			relativizer.relativize(new File(roots[1], "file.txt"));
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// Paths with different roots cannot be relativized
+		}
+	}
+}
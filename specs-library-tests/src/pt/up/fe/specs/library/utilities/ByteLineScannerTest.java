@@ -0,0 +1,68 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.utilities;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ByteLineScannerTest {
+
+	private static List<String> scan(String text, int bufferSize) {
+		List<String> lines = new ArrayList<>();
+
+		ByteArrayInputStream stream = new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+		try (ByteLineScanner scanner = new ByteLineScanner(stream, bufferSize)) {
+			scanner.forEach(line -> lines.add(line.toString()));
+		}
+
+		return lines;
+	}
+
+	@Test
+	public void testTerminators() {
+		assertEquals(Arrays.asList("a", "b", "", "c", "d"), scan("a\rb\n\r\nc\r\nd\r", 1024));
+		assertEquals(Arrays.asList("", ""), scan("\r\r\n", 1024));
+		assertEquals(Arrays.asList(), scan("", 1024));
+	}
+
+	@Test
+	public void testSameAsLineReader() throws IOException {
+		Random random = new Random(0);
+
+		for (int i = 0; i < 100; i++) {
+			String text = LineIndexTest.randomText(random, random.nextInt(40));
+			File file = LineIndexTest.writeTemp(text);
+			List<String> expected = LineReader.readLines(file);
+
+			// Small buffers end in the middle of "\r\n"
+			for (int bufferSize : new int[] { 1, 2, 3, 7, 1024 }) {
+				assertEquals(expected, scan(text, bufferSize));
+			}
+
+			List<String> scanned = new ArrayList<>();
+			assertEquals(expected.size(), ByteLineScanner.scan(file, line -> scanned.add(line.toString())));
+			assertEquals(expected, scanned);
+		}
+	}
+}
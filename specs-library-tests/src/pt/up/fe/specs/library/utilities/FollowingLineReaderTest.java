@@ -0,0 +1,183 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.utilities;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FollowingLineReaderTest {
+
+	private Path folder;
+	private Path file;
+
+	@Before
+	public void setUp() throws IOException {
+		folder = Files.createTempDirectory("following");
+		file = folder.resolve("log.txt");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for (File child : folder.toFile().listFiles()) {
+			child.delete();
+		}
+		Files.delete(folder);
+	}
+
+	private void append(String text) throws IOException {
+		Files.write(file, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+				StandardOpenOption.APPEND);
+	}
+
+	@Test
+	public void testAppend() throws IOException {
+		append("line 1\nline 2\n");
+
+		try (FollowingLineReader reader = FollowingLineReader.open(file.toFile())) {
+			assertEquals(Arrays.asList("line 1", "line 2"), reader.poll());
+			assertEquals(Collections.emptyList(), reader.poll());
+
+			append("line 3\r\nline 4\n");
+			assertEquals(Arrays.asList("line 3", "line 4"), reader.poll());
+			assertEquals(4, reader.getLastLineIndex());
+			assertEquals(Files.size(file), reader.getPosition());
+		}
+	}
+
+	@Test
+	public void testAppendWhileWaiting() throws IOException, InterruptedException {
+		try (FollowingLineReader reader = FollowingLineReader.openAtEnd(file.toFile())) {
+			Thread writer = new Thread(() -> {
+				try {
+					Thread.sleep(100);
+					append("appended\n");
+				} catch (InterruptedException | IOException e) {
+					throw new RuntimeException(e);
+				}
+			});
+			writer.start();
+
+			assertEquals(Arrays.asList("appended"), reader.poll(10, TimeUnit.SECONDS));
+			writer.join();
+		}
+	}
+
+	@Test
+	public void testPartialLine() throws IOException {
+		append("complete\npartial");
+
+		try (FollowingLineReader reader = FollowingLineReader.open(file.toFile())) {
+			assertEquals(Arrays.asList("complete"), reader.poll());
+			// Position of the start of the incomplete line
+			assertEquals(9, reader.getPosition());
+
+			append(" line");
+			assertEquals(Collections.emptyList(), reader.poll());
+
+			append("\n");
+			assertEquals(Arrays.asList("partial line"), reader.poll());
+		}
+	}
+
+	@Test
+	public void testLoneCarriageReturn() throws IOException {
+		append("a\rb\r");
+
+		try (FollowingLineReader reader = FollowingLineReader.open(file.toFile())) {
+			// The last '\r' ends the line without waiting for the next byte
+			assertEquals(Arrays.asList("a", "b"), reader.poll());
+
+			// Completes the "\r\n" of the previous line
+			append("\nc\r");
+			assertEquals(Arrays.asList("c"), reader.poll());
+
+			// Not part of the previous terminator
+			append("d\n");
+			assertEquals(Arrays.asList("d"), reader.poll());
+		}
+	}
+
+	@Test
+	public void testResumeAfterCarriageReturn() throws IOException {
+		append("first\r");
+
+		long position;
+		try (FollowingLineReader reader = FollowingLineReader.open(file.toFile())) {
+			assertEquals(Arrays.asList("first"), reader.poll());
+			position = reader.getPosition();
+		}
+
+		append("\nsecond\n");
+		try (FollowingLineReader reader = FollowingLineReader.open(file.toFile(), position)) {
+			assertEquals(Arrays.asList("second"), reader.poll());
+		}
+	}
+
+	@Test
+	public void testTruncation() throws IOException {
+		append("line 1\nline 2\n");
+
+		try (FollowingLineReader reader = FollowingLineReader.open(file.toFile())) {
+			assertEquals(Arrays.asList("line 1", "line 2"), reader.poll());
+
+			// Same file, smaller than the current position
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				channel.truncate(0);
+			}
+			append("new\n");
+
+			assertEquals(Arrays.asList("new"), reader.poll());
+			assertEquals(0, reader.getNumRotations());
+		}
+	}
+
+	@Test
+	public void testRotation() throws IOException {
+		append("old 1\nold 2");
+
+		try (FollowingLineReader reader = FollowingLineReader.open(file.toFile())) {
+			if (Files.readAttributes(file, BasicFileAttributes.class).fileKey() == null) {
+				// Rotation is not detected without file keys
+				return;
+			}
+
+			assertEquals(Arrays.asList("old 1"), reader.poll());
+
+			Files.move(file, folder.resolve("log.txt.1"));
+			append("new 1\n");
+
+			// The rest of the old file, including the unterminated line, and
+			// then the new file
+			List<String> lines = reader.poll();
+			assertEquals(Arrays.asList("old 2", "new 1"), lines);
+			assertEquals(1, reader.getNumRotations());
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LineIndexTest {
+
+	private static final String[] TERMINATORS = { "\n", "\r", "\r\n" };
+
+	/**
+	 * Random lines with all kinds of terminators, with or without a final
+	 * terminator.
+	 */
+	static String randomText(Random random, int numLines) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < numLines; i++) {
+			int length = random.nextInt(10);
+			for (int j = 0; j < length; j++) {
+				text.append((char) ('a' + random.nextInt(3)));
+			}
+
+			if (i < numLines - 1 || random.nextBoolean()) {
+				text.append(TERMINATORS[random.nextInt(TERMINATORS.length)]);
+			}
+		}
+
+		return text.toString();
+	}
+
+	static File writeTemp(String text) throws IOException {
+		File file = File.createTempFile("lines", ".txt");
+		file.deleteOnExit();
+		Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	@Test
+	public void testLoneCarriageReturn() throws IOException {
+		File file = writeTemp("l1a\rl1b\nl2\nl3\nl4\n");
+		LineIndex index = LineIndex.build(file, 2);
+
+		assertEquals(5, index.getNumLines());
+		assertEquals("l1b", index.openAt(2).nextLine());
+		assertEquals("l2", index.openAt(3).nextLine());
+		assertEquals("l3", index.openAt(4).nextLine());
+	}
+
+	@Test
+	public void testRandom() throws IOException {
+		Random random = new Random(0);
+
+		for (int i = 0; i < 50; i++) {
+			File file = writeTemp(randomText(random, random.nextInt(40)));
+			List<String> expected = LineReader.readLines(file);
+
+			LineIndex index = LineIndex.build(file, 1 + random.nextInt(4));
+			assertEquals(expected.size(), index.getNumLines());
+
+			for (int line = 1; line <= expected.size(); line++) {
+				assertEquals(expected.subList(line - 1, Math.min(expected.size(), line + 2)),
+						index.readLines(line, 3));
+			}
+		}
+	}
+
+	@Test
+	public void testPersisted() throws IOException {
+		File file = writeTemp(randomText(new Random(1), 100));
+		LineIndex index = LineIndex.build(file, 7);
+
+		File indexFile = LineIndex.getIndexFile(file);
+		indexFile.deleteOnExit();
+		index.write(indexFile);
+
+		LineIndex persisted = LineIndex.read(indexFile, file);
+		assertNotNull(persisted);
+		assertEquals(index.getNumLines(), persisted.getNumLines());
+		assertEquals(index.readLines(50, 10), persisted.readLines(50, 10));
+	}
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.utilities;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import pt.up.fe.specs.library.io.CompressionUtils;
+
+public class LineSearcherTest {
+
+	private static final String[] TERMINATORS = { "\n", "\r", "\r\n" };
+
+	/**
+	 * Lines of words, some of them non-ASCII, with all kinds of terminators.
+	 */
+	private static String randomText(Random random, int numLines) {
+		String[] words = { "ab", "ba", "aca", "ção", "x", "€" };
+
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < numLines; i++) {
+			int numWords = random.nextInt(6);
+			for (int j = 0; j < numWords; j++) {
+				text.append(words[random.nextInt(words.length)]);
+			}
+
+			if (i < numLines - 1 || random.nextBoolean()) {
+				text.append(TERMINATORS[random.nextInt(TERMINATORS.length)]);
+			}
+		}
+
+		return text.toString();
+	}
+
+	/**
+	 * 
+	 * @return the lines of LineReader that contain any of the literals
+	 */
+	private static List<NumberedLine> expected(File file, List<String> literals) {
+		List<NumberedLine> matches = new ArrayList<>();
+
+		List<String> lines = LineReader.readLines(file);
+		for (int i = 0; i < lines.size(); i++) {
+			String line = lines.get(i);
+			if (literals.stream().anyMatch(line::contains)) {
+				matches.add(new NumberedLine(i + 1, line));
+			}
+		}
+
+		return matches;
+	}
+
+	@Test
+	public void testRandom() throws IOException {
+		Random random = new Random(0);
+		List<List<String>> literalSets = Arrays.asList(Arrays.asList("aca"), Arrays.asList("ba", "x"),
+				Arrays.asList("ção", "€"), Arrays.asList("a"));
+
+		for (int i = 0; i < 100; i++) {
+			File file = LineIndexTest.writeTemp(randomText(random, random.nextInt(50)));
+
+			for (List<String> literals : literalSets) {
+				assertEquals(expected(file, literals), new LineSearcher(literals).search(file));
+			}
+		}
+	}
+
+	@Test
+	public void testChunks() throws IOException {
+		// Several chunks, with a line longer than a chunk
+		Random random = new Random(1);
+		StringBuilder text = new StringBuilder(randomText(random, 400_000));
+		text.append("\r\n");
+		for (int i = 0; i < 3 * 1024 * 1024; i++) {
+			text.append('y');
+		}
+		text.append("x\r");
+		text.append(randomText(random, 400_000));
+
+		File file = LineIndexTest.writeTemp(text.toString());
+		List<String> literals = Arrays.asList("x", "€");
+		assertEquals(expected(file, literals), new LineSearcher(literals).search(file));
+	}
+
+	@Test
+	public void testCompressed() throws IOException {
+		String text = randomText(new Random(2), 1000);
+
+		File file = File.createTempFile("lines", ".txt.gz");
+		file.deleteOnExit();
+		try (OutputStream stream = CompressionUtils.openOutputStream(file)) {
+			stream.write(text.getBytes(StandardCharsets.UTF_8));
+		}
+
+		File plain = LineIndexTest.writeTemp(text);
+		List<String> literals = Arrays.asList("aca", "ção");
+		assertEquals(expected(plain, literals), new LineSearcher(literals).search(file));
+		Files.delete(plain.toPath());
+	}
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+public class LineSpliteratorTest {
+
+	/**
+	 * Splits the spliterator until the ranges cannot be split, and collects
+	 * the elements of the ranges in order.
+	 * 
+	 * @return the number of ranges
+	 */
+	private static <T> int splitAll(Spliterator<T> spliterator, List<T> elements) {
+		Spliterator<T> prefix = spliterator.trySplit();
+		if (prefix == null) {
+			spliterator.forEachRemaining(elements::add);
+			return 1;
+		}
+
+		return splitAll(prefix, elements) + splitAll(spliterator, elements);
+	}
+
+	@Test
+	public void testSplit() throws IOException {
+		Random random = new Random(0);
+
+		for (int i = 0; i < 5; i++) {
+			// Large enough to be split in several ranges
+			File file = LineIndexTest.writeTemp(LineIndexTest.randomText(random, 100_000));
+			List<String> expected = LineReader.readLines(file);
+
+			List<String> lines = new ArrayList<>();
+			int numRanges = splitAll(LineSpliterator.lines(file), lines);
+			assertTrue(numRanges > 1);
+			assertEquals(expected, lines);
+
+			List<NumberedLine> numbered = new ArrayList<>();
+			numRanges = splitAll(LineSpliterator.numbered(LineIndex.build(file, 1000)), numbered);
+			assertTrue(numRanges > 1);
+			assertEquals(expected.size(), numbered.size());
+			for (int j = 0; j < numbered.size(); j++) {
+				assertEquals(j + 1, numbered.get(j).getLineIndex());
+				assertEquals(expected.get(j), numbered.get(j).getLine());
+			}
+		}
+	}
+
+	@Test
+	public void testParallelStream() throws IOException {
+		File file = LineIndexTest.writeTemp(LineIndexTest.randomText(new Random(1), 100_000));
+		List<String> expected = LineReader.readLines(file);
+
+		assertEquals(expected, LineReader.stream(file, true).collect(Collectors.toList()));
+		assertEquals(expected, LineReader.streamNumbered(file, true)
+				.map(NumberedLine::getLine)
+				.collect(Collectors.toList()));
+	}
+
+	@Test
+	public void testParallelCompressed() throws IOException {
+		File file = LineIndexTest.writeTemp(LineIndexTest.randomText(new Random(2), 100_000));
+		List<String> expected = LineReader.readLines(file);
+
+		File gzFile = File.createTempFile("lines", ".txt.gz");
+		gzFile.deleteOnExit();
+		try (OutputStream stream = new GZIPOutputStream(new FileOutputStream(gzFile))) {
+			Files.copy(file.toPath(), stream);
+		}
+
+		// Lines are read ahead in batches when the stream is split
+		try (Stream<NumberedLine> lines = LineReader.streamNumbered(gzFile, true)) {
+			assertTrue(lines.isParallel());
+
+			List<NumberedLine> numbered = lines.collect(Collectors.toList());
+			assertEquals(expected.size(), numbered.size());
+			for (int i = 0; i < numbered.size(); i++) {
+				assertEquals(i + 1, numbered.get(i).getLineIndex());
+				assertEquals(expected.get(i), numbered.get(i).getLine());
+			}
+		}
+	}
+}
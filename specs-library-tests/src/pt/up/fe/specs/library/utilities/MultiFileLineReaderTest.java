@@ -0,0 +1,90 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+public class MultiFileLineReaderTest {
+
+	@Test
+	public void testLines() throws IOException {
+		File first = LineIndexTest.writeTemp("a1\na2\n");
+		File empty = LineIndexTest.writeTemp("");
+		File last = LineIndexTest.writeTemp("c1\r\nc2");
+
+		try (MultiFileLineReader reader = MultiFileLineReader.open(Arrays.asList(first, empty, last))) {
+			assertEquals("a1", reader.nextLine());
+			assertEquals("a2", reader.nextLine());
+			assertEquals(first, reader.getCurrentFile());
+
+			assertEquals("c1", reader.nextLine());
+			assertEquals(last, reader.getCurrentFile());
+			assertEquals(1, reader.getLastLineIndex());
+
+			assertEquals("c2", reader.nextLine());
+			assertEquals(4, reader.getTotalLineIndex());
+
+			assertFalse(reader.hasNextLine());
+			assertEquals(null, reader.nextLine());
+		}
+	}
+
+	@Test
+	public void testStream() throws IOException {
+		List<File> files = Arrays.asList(LineIndexTest.writeTemp("1\n2\n"), LineIndexTest.writeTemp("3\n"));
+
+		try (MultiFileLineReader reader = MultiFileLineReader.open(files)) {
+			assertEquals(Arrays.asList("1", "2", "3"), reader.stream().collect(Collectors.toList()));
+		}
+	}
+
+	@Test
+	public void testMissingFile() throws IOException {
+		File first = LineIndexTest.writeTemp("a1\n");
+		File missing = new File(first.getParentFile(), first.getName() + ".missing");
+		File last = LineIndexTest.writeTemp("c1\n");
+
+		try (MultiFileLineReader reader = MultiFileLineReader.open(Arrays.asList(first, missing, last))) {
+			assertEquals("a1", reader.nextLine());
+
+			// Reading stops at the missing file, instead of skipping to the
+			// last file or ending silently
+			for (int i = 0; i < 2; i++) {
+				try {
+					reader.nextLine();
+					fail("Expected a RuntimeException");
+				} catch (RuntimeException e) {
+					assertEquals("Could not open file '" + missing + "'", e.getMessage());
+				}
+			}
+
+			try {
+				reader.hasNextLine();
+				fail("Expected a RuntimeException");
+			} catch (RuntimeException e) {
+				assertEquals("Could not open file '" + missing + "'", e.getMessage());
+			}
+		}
+	}
+}
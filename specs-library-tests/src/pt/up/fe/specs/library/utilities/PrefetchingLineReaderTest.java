@@ -0,0 +1,101 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class PrefetchingLineReaderTest {
+
+	/**
+	 * A stream that blocks until released, ignoring interruptions.
+	 */
+	private static class BlockingStream extends InputStream {
+		private final CountDownLatch release = new CountDownLatch(1);
+
+		@Override
+		public int read() {
+			while (true) {
+				try {
+					release.await();
+					return -1;
+				} catch (InterruptedException e) {
+					// Ignore, as some streams do
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testCloseWakesConsumer() throws InterruptedException {
+		BlockingStream stream = new BlockingStream();
+		PrefetchingLineReader reader = PrefetchingLineReader.open(stream, null, 10, 1);
+
+		AtomicReference<String> line = new AtomicReference<>("not read");
+		Thread consumer = new Thread(() -> line.set(reader.nextLine()));
+		consumer.start();
+
+		// Let the consumer wait for lines
+		Thread.sleep(100);
+		reader.close();
+
+		consumer.join(TimeUnit.SECONDS.toMillis(5));
+		assertFalse(consumer.isAlive());
+		assertNull(line.get());
+
+		stream.release.countDown();
+	}
+
+	@Test
+	public void testLines() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			text.append(i).append('\n');
+		}
+
+		InputStream stream = new ByteArrayInputStream(text.toString().getBytes());
+		try (PrefetchingLineReader reader = PrefetchingLineReader.open(stream, null, 7, 2)) {
+			for (int i = 0; i < 1000; i++) {
+				assertEquals(String.valueOf(i), reader.nextLine());
+			}
+			assertNull(reader.nextLine());
+		}
+	}
+
+	@Test
+	public void testCloseDiscardsLines() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			text.append(i).append('\n');
+		}
+
+		InputStream stream = new ByteArrayInputStream(text.toString().getBytes());
+		PrefetchingLineReader reader = PrefetchingLineReader.open(stream, null, 100, 2);
+		assertEquals("0", reader.nextLine());
+
+		// The rest of the current batch is not returned
+		reader.close();
+		assertFalse(reader.hasNextLine());
+		assertNull(reader.nextLine());
+	}
+}
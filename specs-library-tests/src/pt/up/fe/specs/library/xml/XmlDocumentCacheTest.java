@@ -0,0 +1,104 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import pt.up.fe.specs.library.XmlUtils;
+
+public class XmlDocumentCacheTest {
+
+	private static File writeXml(File file, String name) throws IOException {
+		String xml = "<root><cfg name=\"" + name + "\"/></root>";
+		Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private static File newXml(String name) throws IOException {
+		File file = File.createTempFile("cache", ".xml");
+		file.deleteOnExit();
+		return writeXml(file, name);
+	}
+
+	@Test
+	public void testHit() throws IOException {
+		File file = newXml("a");
+		XmlDocumentCache cache = new XmlDocumentCache(1024);
+
+		assertEquals("a", XmlUtils.getAttribute(cache.getXmlRoot(file), "cfg", "name"));
+		// Same file, through a different path
+		File samePath = new File(file.getParentFile(), "." + File.separator + file.getName());
+		assertEquals("a", XmlUtils.getAttribute(cache.getXmlRoot(samePath), "cfg", "name"));
+
+		assertEquals(1, cache.getStats().missCount());
+		assertEquals(1, cache.getStats().hitCount());
+	}
+
+	@Test
+	public void testCopies() throws IOException {
+		File file = newXml("a");
+		XmlDocumentCache cache = new XmlDocumentCache(1024);
+
+		Document first = cache.getXmlRoot(file);
+		Document second = cache.getXmlRoot(file);
+		assertNotSame(first, second);
+
+		((Element) first.getElementsByTagName("cfg").item(0)).setAttribute("name", "changed");
+		assertEquals("a", XmlUtils.getAttribute(second, "cfg", "name"));
+		assertEquals("a", XmlUtils.getAttribute(cache.getXmlRoot(file), "cfg", "name"));
+	}
+
+	@Test
+	public void testInvalidation() throws IOException {
+		File file = newXml("a");
+		long lastModified = file.lastModified();
+		XmlDocumentCache cache = new XmlDocumentCache(1024);
+		assertEquals("a", XmlUtils.getAttribute(cache.getXmlRoot(file), "cfg", "name"));
+
+		// Same size, different modification time
+		writeXml(file, "b");
+		file.setLastModified(lastModified + 2000);
+		assertEquals("b", XmlUtils.getAttribute(cache.getXmlRoot(file), "cfg", "name"));
+
+		// Different size, same modification time
+		writeXml(file, "cc");
+		file.setLastModified(lastModified + 2000);
+		assertEquals("cc", XmlUtils.getAttribute(cache.getXmlRoot(file), "cfg", "name"));
+
+		assertEquals(3, cache.getStats().loadCount());
+	}
+
+	@Test
+	public void testNearLimit() throws IOException {
+		File file = newXml("a");
+		XmlDocumentCache cache = new XmlDocumentCache(file.length() + 1);
+
+		cache.getXmlRoot(file);
+		cache.getXmlRoot(file);
+
+		assertEquals(1, cache.getStats().hitCount());
+		assertEquals(0, cache.getStats().evictionCount());
+		assertEquals(file.length(), cache.getCachedBytes());
+	}
+}
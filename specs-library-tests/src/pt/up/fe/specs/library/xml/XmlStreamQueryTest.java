@@ -0,0 +1,96 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.xml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import pt.up.fe.specs.library.XmlUtils;
+
+public class XmlStreamQueryTest {
+
+	private static File newXml(String xml) throws IOException {
+		File file = File.createTempFile("streamquery", ".xml");
+		file.deleteOnExit();
+		Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	@Test
+	public void testPrefixedTags() throws IOException {
+		// The prefix 'q' is not declared, which a namespace-aware parser rejects
+		File file = newXml("<p:root xmlns:p=\"urn:p\"><p:cfg p:name=\"first\">value</p:cfg>"
+				+ "<q:cfg name=\"other\"/></p:root>");
+		Document doc = XmlUtils.parseXmlRoot(file);
+
+		Map<String, String> values = new XmlStreamQuery()
+				.addAttribute("name", "p:cfg", "p:name")
+				.addAttribute("ns", "p:root", "xmlns:p")
+				.addAttribute("other", "q:cfg", "name")
+				.addSectionValue("value", "p:cfg")
+				.addText("text", "p:root", "p:cfg")
+				.run(file);
+
+		assertEquals(XmlUtils.getAttribute(doc, "p:cfg", "p:name"), values.get("name"));
+		assertEquals(XmlUtils.getAttribute(doc, "p:root", "xmlns:p"), values.get("ns"));
+		assertEquals(XmlUtils.getAttribute(doc, "q:cfg", "name"), values.get("other"));
+		assertEquals(XmlUtils.getText(doc.getChildNodes(), "p:root", "p:cfg"), values.get("value"));
+		assertEquals("value", values.get("text"));
+		assertEquals("urn:p", values.get("ns"));
+	}
+
+	@Test
+	public void testConcurrentRuns() throws Exception {
+		XmlStreamQuery query = new XmlStreamQuery()
+				.addAttribute("name", "cfg", "name")
+				.addText("text", "root", "value");
+
+		List<File> files = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			files.add(newXml("<root><cfg name=\"cfg" + i + "\"/><value>text" + i + "</value></root>"));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Map<String, String>>> results = new ArrayList<>();
+			for (int run = 0; run < 50; run++) {
+				for (File file : files) {
+					results.add(executor.submit(() -> query.run(file)));
+				}
+			}
+
+			for (int i = 0; i < results.size(); i++) {
+				Map<String, String> values = results.get(i).get();
+				int index = i % files.size();
+				assertEquals("cfg" + index, values.get("name"));
+				assertEquals("text" + index, values.get("text"));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
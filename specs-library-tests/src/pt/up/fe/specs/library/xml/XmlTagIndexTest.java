@@ -0,0 +1,103 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import pt.up.fe.specs.library.XmlUtils;
+
+public class XmlTagIndexTest {
+
+	private static Document parse(String xml) throws IOException {
+		File file = File.createTempFile("tagindex", ".xml");
+		file.deleteOnExit();
+		Files.write(file.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+		return XmlUtils.parseXmlRoot(file);
+	}
+
+	private static String getTextMaybe(Document doc, String... tagChain) {
+		try {
+			return XmlUtils.getText(doc.getChildNodes(), tagChain);
+		} catch (RuntimeException e) {
+			return null;
+		}
+	}
+
+	private static String getIndexedTextMaybe(XmlTagIndex index, String... tagChain) {
+		try {
+			return index.getText(tagChain);
+		} catch (RuntimeException e) {
+			return null;
+		}
+	}
+
+	@Test
+	public void testSameAsXmlUtils() throws IOException {
+		Document doc = parse("<root><cfg name=\"first\"><value>1</value></cfg><cfg name=\"second\"/>"
+				+ "<group><cfg name=\"third\"/></group></root>");
+		XmlTagIndex index = XmlTagIndex.build(doc);
+
+		assertEquals(doc.getElementsByTagName("cfg").getLength(), index.getElements("cfg").size());
+		assertEquals(XmlUtils.getAttribute(doc, "cfg", "name"), index.getAttribute("cfg", "name"));
+		assertEquals(XmlUtils.getAttribute(doc, "group", "name"), index.getAttribute("group", "name"));
+		assertEquals(XmlUtils.getText(doc.getChildNodes(), "root", "cfg", "value"),
+				index.getText("root", "cfg", "value"));
+		assertEquals(XmlUtils.getText(doc.getChildNodes(), "root", "group"), index.getText("root", "group"));
+
+		Element root = doc.getDocumentElement();
+		List<Element> children = index.getChildren(root, "cfg");
+		assertEquals(2, children.size());
+		assertEquals("first", children.get(0).getAttribute("name"));
+		assertEquals("second", children.get(1).getAttribute("name"));
+	}
+
+	@Test
+	public void testFirstParentWithoutChild() throws IOException {
+		// Only the second 'cfg' has a 'value'
+		Document doc = parse("<root><cfg/><cfg><value>2</value></cfg></root>");
+		XmlTagIndex index = XmlTagIndex.build(doc);
+
+		// XmlUtils only follows the first 'cfg', and so does the index
+		assertNull(getTextMaybe(doc, "root", "cfg", "value"));
+		assertNull(getIndexedTextMaybe(index, "root", "cfg", "value"));
+
+		// The element is still found by path
+		assertEquals(1, index.getElementsAt("root", "cfg", "value").size());
+		assertEquals("2", index.getElementsAt("root", "cfg", "value").get(0).getTextContent());
+	}
+
+	@Test
+	public void testMissingRoot() throws IOException {
+		XmlTagIndex index = XmlTagIndex.build(parse("<root><cfg/></root>"));
+
+		try {
+			index.getText("cfg");
+			fail("Expected an exception");
+		} catch (RuntimeException e) {
+			assertEquals("Could not find a node with tag-chain 'cfg'", e.getMessage());
+		}
+	}
+}
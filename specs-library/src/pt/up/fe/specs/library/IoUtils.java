@@ -13,22 +13,37 @@
 
 package pt.up.fe.specs.library;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 import pt.up.fe.specs.library.interfaces.ResourceProvider;
+import pt.up.fe.specs.library.io.AtomicFileWriter;
+import pt.up.fe.specs.library.io.AtomicFileWriter.SyncPolicy;
+import pt.up.fe.specs.library.io.CompressionUtils;
+import pt.up.fe.specs.library.io.DeleteStats;
+import pt.up.fe.specs.library.io.FileWalker;
+import pt.up.fe.specs.library.io.FolderDeleter;
+import pt.up.fe.specs.library.io.MappedFile;
+import pt.up.fe.specs.library.io.PathRelativizer;
+import pt.up.fe.specs.library.io.ResourceCache;
 import pt.up.fe.specs.library.utilities.ExtensionFilter;
 
+import com.google.common.io.CharStreams;
 import com.google.common.io.Files;
 
 public class IoUtils {
@@ -38,55 +53,163 @@ public class IoUtils {
 	 */
 	final public static String DEFAULT_CHAR_SET = "UTF-8";
 
+	/**
+	 * Charset corresponding to DEFAULT_CHAR_SET.
+	 */
+	final static Charset DEFAULT_CHARSET = Charset.forName(DEFAULT_CHAR_SET);
+
+	/**
+	 * Size of the buffer used when reading streams of unknown size.
+	 */
+	private final static int READ_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Largest array size that can be safely allocated.
+	 */
+	private final static int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+	/**
+	 * Walker used by getFilesRecursive.
+	 */
+	private final static FileWalker FILE_WALKER = new FileWalker();
+
+	/**
+	 * Walker used by the lazy stream methods, does not sort entries.
+	 */
+	private final static FileWalker STREAM_WALKER = new FileWalker(true, false);
+
+	/**
+	 * Optional cache for getResource.
+	 */
+	private static volatile ResourceCache RESOURCE_CACHE = null;
+
 	/**
 	 * Helper method for Guava Files.toString, which uses the default Charset
 	 * and throws an unchecked exception.
 	 * 
+	 * <p>
+	 * Loads the whole file into the heap, for large files consider
+	 * {@link #readMapped(File)}.
+	 * 
+	 * <p>
+	 * Compressed files (gzip files, or files with a compressed extension, see
+	 * {@link CompressionUtils}) are transparently decompressed.
+	 * 
 	 * @param file
 	 * @return
 	 */
 	public static String read(File file) {
 		try {
+			if (CompressionUtils.isCompressed(file)) {
+				try (Reader reader = new InputStreamReader(CompressionUtils.openInputStream(file),
+						Charset.defaultCharset())) {
+					return CharStreams.toString(reader);
+				}
+			}
+
 			return Files.toString(file, Charset.defaultCharset());
 		} catch (IOException e) {
 			throw new RuntimeException("Could not read file '" + file + "'", e);
 		}
 	}
 
+	/**
+	 * Maps the given file in memory, without copying its contents to the
+	 * heap. Supports files larger than 2GB. Throws an unchecked exception if
+	 * the file could not be mapped.
+	 * 
+	 * @param file
+	 * @return a read-only view of the file
+	 */
+	public static MappedFile readMapped(File file) {
+		try {
+			return MappedFile.map(file);
+		} catch (IOException e) {
+			throw new RuntimeException("Could not map file '" + file + "'", e);
+		}
+	}
+
 	/**
 	 * Reads a stream to a String. The stream is closed after it is read.
 	 * 
+	 * <p>
+	 * The stream is read in bulk into a byte buffer presized with
+	 * {@link InputStream#available()}, and decoded in a single pass using
+	 * {@link #DEFAULT_CHAR_SET}.
+	 * 
 	 * @param inputStream
 	 * @return
 	 */
 	public static String read(InputStream inputStream) {
-		StringBuilder stringBuilder = new StringBuilder();
-
-		// Try to read the contents of the input stream into the StringBuilder
 		// Using 'finally' style 2 as described in
 		// http://www.javapractices.com/topic/TopicAction.do?Id=25
-		try (final BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream,
-				DEFAULT_CHAR_SET))) {
-
-			// Read first character. It can't be cast to "char", otherwise the
-			// -1 will be converted in a character.
-			// First test for -1, then cast.
-			int intChar = bufferedReader.read();
-			while (intChar != -1) {
-				char character = (char) intChar;
-				stringBuilder.append(character);
-				intChar = bufferedReader.read();
-			}
-
+		try (InputStream stream = inputStream) {
+			return readString(stream, stream.available());
 		} catch (FileNotFoundException ex) {
 			Log.warn("FileNotFoundException", ex);
-			stringBuilder = new StringBuilder(0);
 		} catch (IOException ex) {
 			Log.warn("IOException", ex);
-			stringBuilder = new StringBuilder(0);
 		}
 
-		return stringBuilder.toString();
+		return "";
+	}
+
+	/**
+	 * Reads all the bytes of the stream and decodes them with
+	 * {@link #DEFAULT_CHAR_SET}. Does not close the stream.
+	 * 
+	 * @param stream
+	 * @param sizeHint
+	 *            expected number of bytes, used to presize the buffer (can be
+	 *            0 if unknown)
+	 * @return
+	 * @throws IOException
+	 */
+	static String readString(InputStream stream, long sizeHint) throws IOException {
+		int capacity = sizeHint > 0 ? (int) Math.min(sizeHint + 1, MAX_ARRAY_SIZE) : READ_BUFFER_SIZE;
+		byte[] buffer = new byte[capacity];
+		int length = 0;
+
+		while (true) {
+			if (length == buffer.length) {
+				if (length == MAX_ARRAY_SIZE) {
+					throw new IOException("Stream is too large to be read into a String");
+				}
+
+				buffer = Arrays.copyOf(buffer, (int) Math.min(2L * length, MAX_ARRAY_SIZE));
+			}
+
+			int read = stream.read(buffer, length, buffer.length - length);
+			if (read == -1) {
+				break;
+			}
+
+			length += read;
+		}
+
+		return decode(buffer, 0, length);
+	}
+
+	/**
+	 * Decodes bytes in {@link #DEFAULT_CHAR_SET}, with a fast path for
+	 * contents that are pure ASCII.
+	 * 
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @return
+	 */
+	public static String decode(byte[] bytes, int offset, int length) {
+		int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			// Non-ASCII byte, decode as UTF-8
+			if (bytes[i] < 0) {
+				return new String(bytes, offset, length, DEFAULT_CHARSET);
+			}
+		}
+
+		// ASCII is a subset of UTF-8 and maps byte-to-char
+		return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
 	}
 
 	public static InputStream resourceToStream(String resourceName) {
@@ -103,14 +226,42 @@ public class IoUtils {
 		return stream;
 	}
 
+	/**
+	 * Installs a cache used by {@link #getResource(String)}, or disables
+	 * caching if null.
+	 * 
+	 * @param resourceCache
+	 */
+	public static void setResourceCache(ResourceCache resourceCache) {
+		RESOURCE_CACHE = resourceCache;
+	}
+
+	/**
+	 * 
+	 * @return the cache installed with {@link #setResourceCache(ResourceCache)},
+	 *         or null if there is none
+	 */
+	public static ResourceCache getResourceCache() {
+		return RESOURCE_CACHE;
+	}
+
 	/**
 	 * Given the name of a resource, returns a String with the contents of the
 	 * resource.
 	 * 
+	 * <p>
+	 * If a cache was installed with {@link #setResourceCache(ResourceCache)},
+	 * the resource is read through the cache.
+	 * 
 	 * @param resourceName
 	 * @return a string with the contents of the resource
 	 */
 	public static String getResource(String resourceName) {
+		ResourceCache resourceCache = RESOURCE_CACHE;
+		if (resourceCache != null) {
+			return resourceCache.getResource(resourceName);
+		}
+
 		try (InputStream inputStream = IoUtils.resourceToStream(resourceName)) {
 			if (inputStream == null) {
 				Log.warn("Could not get InputStream.");
@@ -139,11 +290,24 @@ public class IoUtils {
 	 * Helper method for Guava Files.write, which uses the default Charset and
 	 * throws an unchecked exception.
 	 * 
+	 * <p>
+	 * Files with a compressed extension (see {@link CompressionUtils}) are
+	 * transparently compressed.
+	 * 
 	 * @param contents
 	 * @param file
 	 */
 	public static boolean write(CharSequence contents, File file) {
 		try {
+			// Chosen by the extension, not by the current contents of the file
+			if (CompressionUtils.getFormat(file) != CompressionUtils.Format.NONE) {
+				try (Writer writer = new OutputStreamWriter(CompressionUtils.openOutputStream(file),
+						Charset.defaultCharset())) {
+					writer.append(contents);
+				}
+				return true;
+			}
+
 			Files.write(contents, file, Charset.defaultCharset());
 			return true;
 		} catch (IOException e) {
@@ -153,6 +317,24 @@ public class IoUtils {
 		return false;
 	}
 
+	/**
+	 * Creates a Writer which streams to a temporary file and atomically
+	 * replaces the given file when closed, using {@link #DEFAULT_CHAR_SET}.
+	 * Throws an unchecked exception if the writer could not be created.
+	 * 
+	 * @param file
+	 * @param syncPolicy
+	 *            when data is forced to the storage device
+	 * @return
+	 */
+	public static AtomicFileWriter newAtomicWriter(File file, SyncPolicy syncPolicy) {
+		try {
+			return AtomicFileWriter.open(file, syncPolicy);
+		} catch (IOException e) {
+			throw new RuntimeException("Could not create writer for file '" + file + "'", e);
+		}
+	}
+
 	public static File existingFile(File parent, String filePath) {
 		File completeFilepath = new File(parent, filePath);
 
@@ -342,29 +524,51 @@ public class IoUtils {
 	 * @param extension
 	 *            a string
 	 * @return all the files inside the given folder, excluding other folders,
-	 *         that have a certain extension.
+	 *         that have a certain extension. Sub-folders are walked in
+	 *         parallel, and the order of the files is always the same.
 	 */
 	public static List<File> getFilesRecursive(File folder, String extension) {
-		if (!folder.isDirectory()) {
-			Log.warn("Folder '" + folder + "' does not exist.");
-			return Collections.emptyList();
-		}
-
-		List<File> fileList = new ArrayList<>();
-		File[] files = folder.listFiles(new ExtensionFilter(extension));
+		ExtensionFilter filter = new ExtensionFilter(extension);
 
-		fileList.addAll(Arrays.asList(files));
+		List<Path> files = FILE_WALKER.getFiles(folder.toPath(), path -> filter.accept(path.getFileName().toString()));
 
-		files = folder.listFiles();
-		for (File file : files) {
-			if (file.isDirectory()) {
-				fileList.addAll(getFilesRecursive(file, extension));
-			}
+		List<File> fileList = new ArrayList<>(files.size());
+		for (Path file : files) {
+			fileList.add(file.toFile());
 		}
 
 		return fileList;
 	}
 
+	/**
+	 * Lazy version of {@link #getFilesRecursive(File, String)}, which returns
+	 * files as folders are read. Supports early termination (e.g., findFirst,
+	 * limit).
+	 * 
+	 * <p>
+	 * The stream keeps folders open while it is being consumed, and should be
+	 * closed if not fully consumed.
+	 * 
+	 * @param folder
+	 * @param extension
+	 * @return
+	 */
+	public static Stream<Path> streamFilesRecursive(File folder, String extension) {
+		ExtensionFilter filter = new ExtensionFilter(extension);
+
+		return STREAM_WALKER.walkFiles(folder.toPath(), path -> filter.accept(path.getFileName().toString()));
+	}
+
+	/**
+	 * Lazy version of {@link #getFolders(File)}.
+	 * 
+	 * @param folder
+	 * @return
+	 */
+	public static Stream<Path> streamFolders(File folder) {
+		return STREAM_WALKER.walk(folder.toPath(), 1, (path, attrs) -> attrs.isDirectory());
+	}
+
 	/**
 	 * 
 	 * @return a File representing the working directory
@@ -475,6 +679,10 @@ public class IoUtils {
 	 * <p>
 	 * The output path is normalized to use the '/' as path separator.
 	 * 
+	 * <p>
+	 * To relativize many files against the same base, use
+	 * {@link PathRelativizer}.
+	 * 
 	 * @param file
 	 *            The file the user needs the relative path of.
 	 * 
@@ -634,28 +842,33 @@ public class IoUtils {
 	 *         files, or the folder does not exit)
 	 */
 	public static boolean deleteFolderContents(File folder) {
+		DeleteStats stats = deleteFolderContents(folder, 1);
+		return stats != null && stats.isSuccess();
+	}
+
+	/**
+	 * Deletes the contents of a folder, deleting sub-folders concurrently.
+	 * Symbolic links are deleted, not followed.
+	 * 
+	 * @param folder
+	 * @param workers
+	 *            the maximum number of threads deleting files concurrently
+	 * @return the statistics of the operation, or null if the given file is
+	 *         not a folder
+	 */
+	public static DeleteStats deleteFolderContents(File folder, int workers) {
 		if (!folder.exists()) {
-			return true;
+			return new DeleteStats(0, 0, 0, 0);
 		}
 
 		if (!folder.isDirectory()) {
 			Log.warn("Not a folder");
-			return false;
+			return null;
 		}
 
-		Log.lib("Deleting contents of folder '" + folder + "'");
-		for (File file : folder.listFiles()) {
-			if (file.isDirectory()) {
-				deleteFolderContents(file);
-			}
-			boolean deleted = file.delete();
-			if (deleted) {
-				Log.lib("Deleted '" + file + "'");
-			} else {
-				Log.lib("Could not delete '" + file + "'");
-			}
-		}
+		DeleteStats stats = new FolderDeleter(workers).deleteContents(folder.toPath());
+		Log.lib("Deleting contents of folder '" + folder + "': " + stats);
 
-		return true;
+		return stats;
 	}
 }
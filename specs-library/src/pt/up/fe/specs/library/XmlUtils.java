@@ -29,26 +29,156 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
+import pt.up.fe.specs.library.xml.XmlDocumentCache;
+import pt.up.fe.specs.library.xml.XmlStreamQuery;
+import pt.up.fe.specs.library.xml.XmlTagIndex;
+
 /**
  * Utility methods related with XML files.
  * 
+ * <p>
+ * For many lookups over the same document, see {@link XmlTagIndex}.
+ * 
  * @author Joao Bispo
  * 
  */
 public class XmlUtils {
 
+	/**
+	 * Factory used to create the DocumentBuilders of each thread.
+	 */
+	private static volatile DocumentBuilderFactory BUILDER_FACTORY = null;
+
+	/**
+	 * DocumentBuilder of each thread, which is reused between parses.
+	 */
+	private static final ThreadLocal<CachedBuilder> BUILDERS = new ThreadLocal<>();
+
+	/**
+	 * A DocumentBuilder, and the factory that created it.
+	 */
+	private static class CachedBuilder {
+		private final DocumentBuilderFactory factory;
+		private final DocumentBuilder builder;
+
+		CachedBuilder(DocumentBuilderFactory factory, DocumentBuilder builder) {
+			this.factory = factory;
+			this.builder = builder;
+		}
+	}
+
+	/**
+	 * Cache used by getXmlRoot(File), if not null.
+	 */
+	private static volatile XmlDocumentCache DOCUMENT_CACHE = null;
+
 	public static NodeList getNodeList(File file) {
 		return getXmlRoot(file).getChildNodes();
 	}
 
+	/**
+	 * Sets the factory used to create DocumentBuilders (e.g., to enable
+	 * validation or namespaces). If null, the default factory is used.
+	 * 
+	 * <p>
+	 * The factory should not be modified after this call. Each thread creates
+	 * a DocumentBuilder the first time it parses a file, and reuses it in the
+	 * following parses.
+	 * 
+	 * @param factory
+	 */
+	public static void setDocumentBuilderFactory(DocumentBuilderFactory factory) {
+		BUILDER_FACTORY = factory;
+	}
+
+	/**
+	 * 
+	 * @return the factory used to create DocumentBuilders
+	 */
+	public static DocumentBuilderFactory getDocumentBuilderFactory() {
+		DocumentBuilderFactory factory = BUILDER_FACTORY;
+		if (factory != null) {
+			return factory;
+		}
+
+		synchronized (XmlUtils.class) {
+			if (BUILDER_FACTORY == null) {
+				BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+			}
+
+			return BUILDER_FACTORY;
+		}
+	}
+
+	/**
+	 * 
+	 * @return the DocumentBuilder of the current thread, which must be reset
+	 *         after use
+	 * @throws ParserConfigurationException
+	 */
+	private static DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+		DocumentBuilderFactory factory = getDocumentBuilderFactory();
+
+		CachedBuilder cached = BUILDERS.get();
+		if (cached != null && cached.factory == factory) {
+			return cached.builder;
+		}
+
+		// Factories are not thread-safe
+		DocumentBuilder builder;
+		synchronized (factory) {
+			builder = factory.newDocumentBuilder();
+		}
+
+		BUILDERS.set(new CachedBuilder(factory, builder));
+		return builder;
+	}
+
+	/**
+	 * Installs a cache of parsed documents, which is used by
+	 * {@link #getXmlRoot(File)}. If null, files are parsed on each call.
+	 * 
+	 * @param documentCache
+	 */
+	public static void setDocumentCache(XmlDocumentCache documentCache) {
+		DOCUMENT_CACHE = documentCache;
+	}
+
+	/**
+	 * Parses the given XML file.
+	 * 
+	 * <p>
+	 * If a cache was installed with {@link #setDocumentCache(XmlDocumentCache)},
+	 * the document is read through the cache.
+	 * 
+	 * @param file
+	 * @return the parsed document, or null if the file could not be parsed
+	 */
 	public static Document getXmlRoot(File file) {
-		try {
-			DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-			DocumentBuilder dBuilder;
+		XmlDocumentCache documentCache = DOCUMENT_CACHE;
+		if (documentCache != null) {
+			return documentCache.getXmlRoot(file);
+		}
+
+		return parseXmlRoot(file);
+	}
 
-			dBuilder = dbFactory.newDocumentBuilder();
+	/**
+	 * Parses the given XML file, without using the document cache.
+	 * 
+	 * @param file
+	 * @return the parsed document, or null if the file could not be parsed
+	 */
+	public static Document parseXmlRoot(File file) {
+		try {
+			DocumentBuilder dBuilder = getDocumentBuilder();
 
-			Document doc = dBuilder.parse(file);
+			Document doc;
+			try {
+				doc = dBuilder.parse(file);
+			} finally {
+				dBuilder.reset();
+			}
 
 			// optional, but recommended
 			// read this -
@@ -69,12 +199,14 @@ public class XmlUtils {
 
 	public static Document getXmlRoot(String uri) {
 		try {
-			DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-			DocumentBuilder dBuilder;
+			DocumentBuilder dBuilder = getDocumentBuilder();
 
-			dBuilder = dbFactory.newDocumentBuilder();
-
-			Document doc = dBuilder.parse(uri);
+			Document doc;
+			try {
+				doc = dBuilder.parse(uri);
+			} finally {
+				dBuilder.reset();
+			}
 
 			// optional, but recommended
 			// read this -
@@ -175,6 +307,47 @@ public class XmlUtils {
 		return sectionElement.getTextContent();
 	}
 
+	/**
+	 * Streaming version of {@link #getAttribute(Document, String, String)},
+	 * which does not build a DOM and stops reading after the first element
+	 * with the given tag.
+	 * 
+	 * <p>
+	 * To evaluate several queries in a single pass, see {@link XmlStreamQuery}.
+	 * 
+	 * @param file
+	 * @param section
+	 * @param attribute
+	 * @return the value of the attribute, or null if the section was not found
+	 */
+	public static String streamAttribute(File file, String section, String attribute) {
+		return new XmlStreamQuery().addAttribute(section, section, attribute).run(file).get(section);
+	}
+
+	/**
+	 * Streaming version of {@link #getSectionValue(Element, String)}, applied
+	 * to the whole file.
+	 * 
+	 * @param file
+	 * @param section
+	 * @return the text content of the section, or null if it was not found
+	 */
+	public static String streamSectionValue(File file, String section) {
+		return new XmlStreamQuery().addSectionValue(section, section).run(file).get(section);
+	}
+
+	/**
+	 * Streaming version of {@link #getText(NodeList, String...)}, starting at
+	 * the root of the file.
+	 * 
+	 * @param file
+	 * @param tagChain
+	 * @return the text content of the element, or null if it was not found
+	 */
+	public static String streamText(File file, String... tagChain) {
+		return new XmlStreamQuery().addText("text", tagChain).run(file).get("text");
+	}
+
 	public static Integer getAttributeInt(Document doc, String section, String attribute) {
 		String integerValue = getAttribute(doc, section, attribute);
 
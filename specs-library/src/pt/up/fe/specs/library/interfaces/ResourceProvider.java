@@ -14,10 +14,21 @@
 package pt.up.fe.specs.library.interfaces;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import pt.up.fe.specs.library.IoUtils;
+import pt.up.fe.specs.library.io.AsyncIoUtils;
+import pt.up.fe.specs.library.io.ResourceCache;
 
 import com.google.common.base.Preconditions;
 
@@ -70,16 +81,128 @@ public interface ResourceProvider {
 		return resourcePath.substring(slashIndex + 1);
 	}
 
+	/**
+	 * Copies the resource to the given folder, byte by byte, without decoding
+	 * it.
+	 * 
+	 * <p>
+	 * If a cache was installed with IoUtils.setResourceCache, the bytes are
+	 * taken from the cache, otherwise the resource is streamed to the file.
+	 * 
+	 * @param folder
+	 * @return the written file
+	 */
 	default File write(File folder) {
 		Preconditions.checkArgument(folder.isDirectory(), folder + " does not exist");
 		File outputFile = new File(folder, getResourceName());
 
-		boolean success = IoUtils.write(IoUtils.getResource(this), outputFile);
-		if (!success) {
-			throw new RuntimeException("Could not write file '" + outputFile + "'");
+		ResourceCache resourceCache = IoUtils.getResourceCache();
+		if (resourceCache != null) {
+			byte[] bytes = resourceCache.getBytes(getResource());
+			if (bytes == null) {
+				throw new RuntimeException("Could not write file '" + outputFile + "'");
+			}
+
+			try {
+				Files.write(outputFile.toPath(), bytes);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not write file '" + outputFile + "'", e);
+			}
+
+			return outputFile;
+		}
+
+		try (InputStream inputStream = IoUtils.resourceToStream(getResource())) {
+			if (inputStream == null) {
+				throw new RuntimeException("Could not write file '" + outputFile + "'");
+			}
+
+			Files.copy(inputStream, outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			throw new RuntimeException("Could not write file '" + outputFile + "'", e);
 		}
 
 		return outputFile;
 	}
 
+	/**
+	 * Copies all the resources in an enumeration to the given folder,
+	 * concurrently.
+	 * 
+	 * @param enumClass
+	 * @param folder
+	 * @return the written files, in the order of the enumeration
+	 */
+	public static <K extends Enum<K> & ResourceProvider> List<File> write(Class<K> enumClass, File folder) {
+		return write(getResources(enumClass), folder);
+	}
+
+	/**
+	 * Copies the given resources to a folder, concurrently.
+	 * 
+	 * @param resources
+	 * @param folder
+	 * @return the written files, in the order of the given resources
+	 */
+	public static List<File> write(Collection<? extends ResourceProvider> resources, File folder) {
+		return write(resources, folder, AsyncIoUtils.getDefaultExecutor());
+	}
+
+	/**
+	 * Copies the given resources to a folder, using the threads of the given
+	 * executor and the calling thread.
+	 * 
+	 * <p>
+	 * The calling thread also writes resources, and only waits for the writes
+	 * that already started. The call completes even if no thread of the
+	 * executor is available (e.g., when called from one of its threads).
+	 * 
+	 * @param resources
+	 * @param folder
+	 * @param executor
+	 * @return the written files, in the order of the given resources
+	 */
+	public static List<File> write(Collection<? extends ResourceProvider> resources, File folder, Executor executor) {
+		Preconditions.checkArgument(folder.isDirectory(), folder + " does not exist");
+
+		List<ResourceProvider> resourceList = new ArrayList<>(resources);
+		List<CompletableFuture<File>> futures = new ArrayList<>(resourceList.size());
+		for (int i = 0; i < resourceList.size(); i++) {
+			futures.add(new CompletableFuture<>());
+		}
+
+		// Each writer takes the next resource that was not taken yet
+		AtomicInteger nextIndex = new AtomicInteger();
+		Runnable writer = () -> {
+			int index;
+			while ((index = nextIndex.getAndIncrement()) < resourceList.size()) {
+				try {
+					futures.get(index).complete(resourceList.get(index).write(folder));
+				} catch (RuntimeException e) {
+					futures.get(index).completeExceptionally(e);
+				}
+			}
+		};
+
+		for (int i = 1; i < resourceList.size(); i++) {
+			executor.execute(writer);
+		}
+		writer.run();
+
+		List<File> files = new ArrayList<>(futures.size());
+		try {
+			for (CompletableFuture<File> future : futures) {
+				files.add(future.join());
+			}
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+
+			throw e;
+		}
+
+		return files;
+	}
+
 }
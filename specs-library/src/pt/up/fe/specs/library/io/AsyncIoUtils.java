@@ -0,0 +1,122 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.io;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import pt.up.fe.specs.library.IoUtils;
+import pt.up.fe.specs.library.interfaces.ResourceProvider;
+
+/**
+ * Asynchronous counterparts of IoUtils methods, which return
+ * CompletableFutures instead of blocking the calling thread.
+ * 
+ * <p>
+ * By default, operations run on a dedicated pool of daemon I/O threads, so
+ * that blocking disk accesses do not use the threads of the common
+ * ForkJoinPool. The semantics of each method are the same as the
+ * corresponding IoUtils method, with unchecked exceptions completing the
+ * future exceptionally.
+ * 
+ */
+public class AsyncIoUtils {
+
+	/**
+	 * Number of threads of the default I/O executor.
+	 */
+	private static final int IO_THREADS = Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * Lazily creates the default executor.
+	 */
+	private static class ExecutorHolder {
+		private static final ExecutorService EXECUTOR = newIoExecutor();
+	}
+
+	private static ExecutorService newIoExecutor() {
+		AtomicInteger counter = new AtomicInteger();
+
+		return Executors.newFixedThreadPool(IO_THREADS, runnable -> {
+			Thread thread = new Thread(runnable, "specs-io-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * 
+	 * @return the executor used by the methods that do not receive one
+	 */
+	public static Executor getDefaultExecutor() {
+		return ExecutorHolder.EXECUTOR;
+	}
+
+	/**
+	 * Asynchronous version of {@link IoUtils#read(File)}.
+	 * 
+	 * @param file
+	 * @return
+	 */
+	public static CompletableFuture<String> read(File file) {
+		return read(file, getDefaultExecutor());
+	}
+
+	public static CompletableFuture<String> read(File file, Executor executor) {
+		return CompletableFuture.supplyAsync(() -> IoUtils.read(file), executor);
+	}
+
+	/**
+	 * Asynchronous version of {@link IoUtils#write(CharSequence, File)}.
+	 * 
+	 * @param contents
+	 * @param file
+	 * @return a future with true if the file was written
+	 */
+	public static CompletableFuture<Boolean> write(CharSequence contents, File file) {
+		return write(contents, file, getDefaultExecutor());
+	}
+
+	public static CompletableFuture<Boolean> write(CharSequence contents, File file, Executor executor) {
+		return CompletableFuture.supplyAsync(() -> IoUtils.write(contents, file), executor);
+	}
+
+	/**
+	 * Asynchronous version of {@link IoUtils#getResource(String)}.
+	 * 
+	 * @param resourceName
+	 * @return
+	 */
+	public static CompletableFuture<String> getResource(String resourceName) {
+		return getResource(resourceName, getDefaultExecutor());
+	}
+
+	public static CompletableFuture<String> getResource(String resourceName, Executor executor) {
+		return CompletableFuture.supplyAsync(() -> IoUtils.getResource(resourceName), executor);
+	}
+
+	/**
+	 * Helper method which accepts a ResourceProvider.
+	 * 
+	 * @param resource
+	 * @return
+	 */
+	public static CompletableFuture<String> getResource(ResourceProvider resource) {
+		return getResource(resource.getResource());
+	}
+}
@@ -0,0 +1,315 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+import pt.up.fe.specs.library.IoUtils;
+import pt.up.fe.specs.library.Log;
+
+/**
+ * Writer which streams its contents to a temporary file in the same folder as
+ * the target, and atomically renames it to the target when closed. Readers of
+ * the target never see a partially written file.
+ * 
+ * <p>
+ * Characters are encoded with {@link IoUtils#DEFAULT_CHAR_SET} through a
+ * large direct buffer. If writing fails, or {@link #abort()} is called, the
+ * temporary file is deleted and the target is left untouched.
+ * 
+ */
+public class AtomicFileWriter extends Writer {
+
+	/**
+	 * When data is forced to the storage device.
+	 */
+	public static enum SyncPolicy {
+		/**
+		 * No explicit sync, the OS decides when data is written.
+		 */
+		NONE,
+		/**
+		 * The temporary file is synced before being renamed.
+		 */
+		FILE,
+		/**
+		 * The temporary file is synced before being renamed, and the folder is
+		 * synced after the rename, so the rename survives a crash.
+		 */
+		FILE_AND_FOLDER;
+	}
+
+	private static final int CHAR_BUFFER_SIZE = 256 * 1024;
+	private static final int BYTE_BUFFER_SIZE = 1024 * 1024;
+
+	private final Path target;
+	private final Path tempFile;
+	private final SyncPolicy syncPolicy;
+	private final FileChannel channel;
+	private final CharsetEncoder encoder;
+	private final CharBuffer charBuffer;
+	private final ByteBuffer byteBuffer;
+
+	private boolean closed;
+
+	private AtomicFileWriter(Path target, Path tempFile, SyncPolicy syncPolicy, FileChannel channel) {
+		this.target = target;
+		this.tempFile = tempFile;
+		this.syncPolicy = syncPolicy;
+		this.channel = channel;
+
+		this.encoder = Charset.forName(IoUtils.DEFAULT_CHAR_SET).newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.charBuffer = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+		this.byteBuffer = ByteBuffer.allocateDirect(BYTE_BUFFER_SIZE);
+
+		this.closed = false;
+	}
+
+	/**
+	 * Creates a writer for the given file. The file is only replaced when the
+	 * writer is closed.
+	 * 
+	 * @param file
+	 * @param syncPolicy
+	 * @return
+	 * @throws IOException
+	 */
+	public static AtomicFileWriter open(File file, SyncPolicy syncPolicy) throws IOException {
+		Path target = file.toPath().toAbsolutePath();
+
+		// Files.createTempFile is not used since it ignores the umask (file
+		// would only be readable by the owner)
+		while (true) {
+			Path tempFile = target.resolveSibling("." + target.getFileName() + "."
+					+ Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+
+			try {
+				FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE,
+						StandardOpenOption.CREATE_NEW);
+				return new AtomicFileWriter(target, tempFile, syncPolicy, channel);
+			} catch (FileAlreadyExistsException e) {
+				// Try another name
+			}
+		}
+	}
+
+	public File getFile() {
+		return target.toFile();
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		checkOpen();
+
+		if (!charBuffer.hasRemaining()) {
+			encodeChars(false);
+		}
+
+		charBuffer.put((char) c);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		checkOpen();
+
+		while (len > 0) {
+			if (!charBuffer.hasRemaining()) {
+				encodeChars(false);
+			}
+
+			int copied = Math.min(len, charBuffer.remaining());
+			charBuffer.put(cbuf, off, copied);
+
+			off += copied;
+			len -= copied;
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		checkOpen();
+
+		while (len > 0) {
+			if (!charBuffer.hasRemaining()) {
+				encodeChars(false);
+			}
+
+			int copied = Math.min(len, charBuffer.remaining());
+			int position = charBuffer.position();
+			str.getChars(off, off + copied, charBuffer.array(), charBuffer.arrayOffset() + position);
+			charBuffer.position(position + copied);
+
+			off += copied;
+			len -= copied;
+		}
+	}
+
+	/**
+	 * Encodes the characters in the char buffer, writing full byte buffers to
+	 * the file.
+	 */
+	private void encodeChars(boolean endOfInput) throws IOException {
+		charBuffer.flip();
+
+		while (true) {
+			CoderResult result = encoder.encode(charBuffer, byteBuffer, endOfInput);
+
+			if (result.isOverflow()) {
+				writeBytes();
+				continue;
+			}
+
+			if (result.isUnderflow()) {
+				break;
+			}
+
+			result.throwException();
+		}
+
+		// Keeps incomplete surrogate pairs
+		charBuffer.compact();
+	}
+
+	private void writeBytes() throws IOException {
+		byteBuffer.flip();
+		try {
+			while (byteBuffer.hasRemaining()) {
+				channel.write(byteBuffer);
+			}
+		} catch (IOException e) {
+			abort();
+			throw e;
+		}
+		byteBuffer.clear();
+	}
+
+	/**
+	 * Writes buffered data to the temporary file. The target file is only
+	 * replaced on close.
+	 */
+	@Override
+	public void flush() throws IOException {
+		checkOpen();
+
+		encodeChars(false);
+		writeBytes();
+	}
+
+	/**
+	 * Writes the remaining data, syncs according to the policy, and replaces
+	 * the target file. If anything fails, the temporary file is deleted and
+	 * the target is left untouched.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+
+		try {
+			encodeChars(true);
+			while (encoder.flush(byteBuffer).isOverflow()) {
+				writeBytes();
+			}
+			writeBytes();
+
+			if (syncPolicy != SyncPolicy.NONE) {
+				channel.force(true);
+			}
+		} catch (IOException | RuntimeException e) {
+			abort();
+			throw e;
+		}
+
+		closed = true;
+		channel.close();
+
+		try {
+			move();
+		} catch (IOException e) {
+			Files.deleteIfExists(tempFile);
+			throw e;
+		}
+
+		if (syncPolicy == SyncPolicy.FILE_AND_FOLDER) {
+			syncFolder(target.getParent());
+		}
+	}
+
+	private void move() throws IOException {
+		try {
+			Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Log.lib("Atomic move not supported for '" + target + "', using a regular move");
+			Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static void syncFolder(Path folder) {
+		// Not supported in all platforms (e.g., Windows)
+		try (FileChannel folderChannel = FileChannel.open(folder, StandardOpenOption.READ)) {
+			folderChannel.force(true);
+		} catch (IOException e) {
+			Log.lib("Could not sync folder '" + folder + "': " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Discards what was written and deletes the temporary file. The target
+	 * file is left untouched.
+	 */
+	public void abort() {
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+
+		try {
+			channel.close();
+		} catch (IOException e) {
+			Log.warn("Could not close file '" + tempFile + "'", e);
+		}
+
+		try {
+			Files.deleteIfExists(tempFile);
+		} catch (IOException e) {
+			Log.warn("Could not delete temporary file '" + tempFile + "'", e);
+		}
+	}
+
+	private void checkOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Writer for '" + target + "' is closed");
+		}
+	}
+}
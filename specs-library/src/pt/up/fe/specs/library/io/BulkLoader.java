@@ -0,0 +1,289 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.io;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import pt.up.fe.specs.library.IoUtils;
+import pt.up.fe.specs.library.utilities.LineReader;
+
+/**
+ * Applies a function (e.g., IoUtils.read) to many files concurrently, with a
+ * limit on the number of files processed at the same time.
+ * 
+ * <p>
+ * Each call starts up to 'concurrency' workers in the executor, which take the
+ * next file until all files are processed. Results can be collected in the
+ * order of the input files, or streamed as they complete. If the function
+ * fails for a file, no more files are started and the failure is thrown to
+ * the caller.
+ * 
+ * <p>
+ * By default, workers run in a cached pool of daemon threads, which only
+ * keeps threads while they are used. Any Executor can be given instead (e.g.,
+ * an executor of virtual threads, on JDKs that support them).
+ * 
+ */
+public class BulkLoader {
+
+	private static final int DEFAULT_CONCURRENCY = 16;
+
+	/**
+	 * Lazily creates the default executor.
+	 */
+	private static class ExecutorHolder {
+		private static final ExecutorService EXECUTOR = newExecutor();
+	}
+
+	private static ExecutorService newExecutor() {
+		AtomicInteger counter = new AtomicInteger();
+
+		return Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "specs-bulk-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private final int concurrency;
+	private final Executor executor;
+
+	/**
+	 * Processes up to 16 files at the same time.
+	 */
+	public BulkLoader() {
+		this(DEFAULT_CONCURRENCY);
+	}
+
+	/**
+	 * 
+	 * @param concurrency
+	 *            the maximum number of files processed at the same time
+	 */
+	public BulkLoader(int concurrency) {
+		this(concurrency, ExecutorHolder.EXECUTOR);
+	}
+
+	/**
+	 * 
+	 * @param concurrency
+	 *            the maximum number of files processed at the same time
+	 * @param executor
+	 *            where the files are processed
+	 */
+	public BulkLoader(int concurrency, Executor executor) {
+		this.concurrency = Math.max(1, concurrency);
+		this.executor = executor;
+	}
+
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	/**
+	 * The result of processing a file.
+	 */
+	public static class Loaded<T> {
+		private final int index;
+		private final File file;
+		private final T result;
+		private final Throwable error;
+
+		private Loaded(int index, File file, T result, Throwable error) {
+			this.index = index;
+			this.file = file;
+			this.result = result;
+			this.error = error;
+		}
+
+		/**
+		 * 
+		 * @return the position of the file in the input collection
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public T getResult() {
+			return result;
+		}
+
+		@Override
+		public String toString() {
+			return index + ": " + file;
+		}
+	}
+
+	/**
+	 * Reads the contents of the files (see {@link IoUtils#read(File)}).
+	 * 
+	 * @param files
+	 * @return the contents, in the order of the files
+	 */
+	public List<String> read(Collection<File> files) {
+		return load(files, IoUtils::read);
+	}
+
+	/**
+	 * Reads the lines of the files (see {@link LineReader#readLines(File)}).
+	 * 
+	 * @param files
+	 * @return the lines, in the order of the files
+	 */
+	public List<List<String>> readLines(Collection<File> files) {
+		return load(files, LineReader::readLines);
+	}
+
+	/**
+	 * Applies the function to all files, and waits for the results.
+	 * 
+	 * @param files
+	 * @param function
+	 * @return the results, in the order of the files
+	 */
+	public <T> List<T> load(Collection<File> files, Function<File, ? extends T> function) {
+		Object[] results = new Object[files.size()];
+
+		try (Stream<Loaded<T>> loaded = stream(files, function)) {
+			loaded.forEach(result -> results[result.getIndex()] = result.getResult());
+		}
+
+		@SuppressWarnings("unchecked")
+		List<T> list = (List<T>) Arrays.asList(results);
+		return list;
+	}
+
+	/**
+	 * Applies the function to all files, returning the results as they
+	 * complete. Results that were not consumed yet are buffered.
+	 * 
+	 * <p>
+	 * Closing the stream before consuming all results stops starting new
+	 * files.
+	 * 
+	 * @param files
+	 * @param function
+	 * @return a sequential stream with the results, in completion order
+	 */
+	public <T> Stream<Loaded<T>> stream(Collection<File> files, Function<File, ? extends T> function) {
+		Batch<T> batch = new Batch<>(new ArrayList<>(files), function);
+		batch.start();
+
+		Spliterator<Loaded<T>> spliterator = Spliterators.spliterator(batch, files.size(), Spliterator.NONNULL
+				| Spliterator.SIZED);
+		return StreamSupport.stream(spliterator, false).onClose(batch::cancel);
+	}
+
+	/**
+	 * The files of a single call, and the results that were not consumed yet.
+	 */
+	private class Batch<T> implements Iterator<Loaded<T>> {
+		private final List<File> files;
+		private final Function<File, ? extends T> function;
+		private final AtomicInteger nextFile;
+		private final AtomicBoolean cancelled;
+		private final BlockingQueue<Loaded<T>> completed;
+		private int consumed;
+
+		Batch(List<File> files, Function<File, ? extends T> function) {
+			this.files = files;
+			this.function = function;
+			this.nextFile = new AtomicInteger();
+			this.cancelled = new AtomicBoolean();
+			this.completed = new LinkedBlockingQueue<>();
+			this.consumed = 0;
+		}
+
+		void start() {
+			int numWorkers = Math.min(concurrency, files.size());
+			for (int i = 0; i < numWorkers; i++) {
+				executor.execute(this::work);
+			}
+		}
+
+		/**
+		 * Processes files until there are no more files, or the batch is
+		 * cancelled.
+		 */
+		private void work() {
+			int index;
+			while (!cancelled.get() && (index = nextFile.getAndIncrement()) < files.size()) {
+				File file = files.get(index);
+
+				try {
+					completed.add(new Loaded<>(index, file, function.apply(file), null));
+				} catch (RuntimeException | Error e) {
+					cancelled.set(true);
+					completed.add(new Loaded<>(index, file, null, e));
+				}
+			}
+		}
+
+		void cancel() {
+			cancelled.set(true);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return consumed < files.size();
+		}
+
+		@Override
+		public Loaded<T> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			Loaded<T> loaded;
+			try {
+				loaded = completed.take();
+			} catch (InterruptedException e) {
+				cancel();
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while loading files", e);
+			}
+
+			if (loaded.error != null) {
+				// Do not wait for the files that were not started
+				consumed = files.size();
+				throw new RuntimeException("Could not load file '" + loaded.file + "'", loaded.error);
+			}
+
+			consumed++;
+			return loaded;
+		}
+	}
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.io;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+/**
+ * Utility methods shared by the caches of the library.
+ * 
+ */
+public class CacheUtils {
+
+	/**
+	 * Creates a builder for a cache bounded by the total weight of its
+	 * entries, with least-recently-used eviction.
+	 * 
+	 * <p>
+	 * The cache has a single segment. Guava splits the maximum weight evenly
+	 * between segments, so with the default number of segments an entry
+	 * heavier than a fraction of the maximum would never be cached, and
+	 * eviction would not be globally least-recently-used. The trade-off is
+	 * that writes (loads and evictions) are serialized through one lock, while
+	 * reads of cached entries are mostly lock-free.
+	 * 
+	 * @param maxWeight
+	 *            maximum total weight of the entries
+	 * @param weigher
+	 *            the weight of each entry
+	 * @return
+	 */
+	public static <K, V> CacheBuilder<K, V> newWeightedBuilder(long maxWeight, Weigher<K, V> weigher) {
+		Preconditions.checkArgument(maxWeight >= 0, "Maximum weight must not be negative: " + maxWeight);
+
+		return CacheBuilder.newBuilder()
+				.concurrencyLevel(1)
+				.maximumWeight(maxWeight)
+				.weigher(weigher);
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Transparent support for compressed files (gzip and zlib/deflate), using
+ * java.util.zip.
+ * 
+ * <p>
+ * When reading, gzip is detected by the first bytes of the file. Otherwise,
+ * the format is chosen by the extension of the file ('.gz' for gzip, '.zz' or
+ * '.deflate' for zlib). Gzip files are compressed with several threads (see
+ * {@link ParallelGzipOutputStream}).
+ * 
+ */
+public class CompressionUtils {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Compression formats.
+	 */
+	public static enum Format {
+		NONE,
+		GZIP,
+		DEFLATE;
+	}
+
+	/**
+	 * 
+	 * @param file
+	 * @return the compression format, according to the extension of the file
+	 */
+	public static Format getFormat(File file) {
+		String name = file.getName().toLowerCase();
+
+		if (name.endsWith(".gz")) {
+			return Format.GZIP;
+		}
+
+		if (name.endsWith(".zz") || name.endsWith(".deflate")) {
+			return Format.DEFLATE;
+		}
+
+		return Format.NONE;
+	}
+
+	/**
+	 * 
+	 * @return true if the bytes are the start of a gzip header (magic number
+	 *         and deflate method)
+	 */
+	private static boolean isGzipHeader(int byte1, int byte2, int byte3) {
+		return byte1 == 0x1f && byte2 == 0x8b && byte3 == 0x08;
+	}
+
+	/**
+	 * Opens a file for reading. If the file starts with a gzip header, it is
+	 * decompressed. Zlib headers are not reliable enough to be detected (text
+	 * files can start with a valid header), so files with zlib extensions are
+	 * also decompressed.
+	 * 
+	 * @param file
+	 * @return a buffered stream with the uncompressed contents of the file
+	 * @throws IOException
+	 */
+	public static InputStream openInputStream(File file) throws IOException {
+		InputStream stream = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+
+		try {
+			stream.mark(3);
+			boolean isGzip = isGzipHeader(stream.read(), stream.read(), stream.read());
+			stream.reset();
+
+			if (isGzip) {
+				return new BufferedInputStream(new GZIPInputStream(stream, BUFFER_SIZE), BUFFER_SIZE);
+			}
+
+			if (getFormat(file) == Format.DEFLATE) {
+				return new BufferedInputStream(new InflaterInputStream(stream), BUFFER_SIZE);
+			}
+
+			return stream;
+		} catch (IOException e) {
+			stream.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens a file for writing, compressing the contents according to the
+	 * extension of the file.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static OutputStream openOutputStream(File file) throws IOException {
+		OutputStream stream = new FileOutputStream(file);
+
+		switch (getFormat(file)) {
+		case GZIP:
+			return new ParallelGzipOutputStream(stream);
+		case DEFLATE:
+			return new DeflaterOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+		default:
+			return new BufferedOutputStream(stream, BUFFER_SIZE);
+		}
+	}
+
+	/**
+	 * Uses the same rules as {@link #openInputStream(File)}, so files for
+	 * which this method returns false can be read directly (e.g.,
+	 * memory-mapped).
+	 * 
+	 * @param file
+	 * @return true if the file is compressed, because it starts with a gzip
+	 *         header or according to its extension
+	 */
+	public static boolean isCompressed(File file) {
+		if (getFormat(file) != Format.NONE) {
+			return true;
+		}
+
+		try (InputStream stream = new FileInputStream(file)) {
+			return isGzipHeader(stream.read(), stream.read(), stream.read());
+		} catch (IOException e) {
+			// E.g., file does not exist yet
+			return false;
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.io;
+
+/**
+ * Aggregate results of deleting the contents of a folder.
+ * 
+ */
+public class DeleteStats {
+
+	private final long filesDeleted;
+	private final long foldersDeleted;
+	private final long failures;
+	private final long bytesFreed;
+
+	public DeleteStats(long filesDeleted, long foldersDeleted, long failures, long bytesFreed) {
+		this.filesDeleted = filesDeleted;
+		this.foldersDeleted = foldersDeleted;
+		this.failures = failures;
+		this.bytesFreed = bytesFreed;
+	}
+
+	/**
+	 * 
+	 * @return the number of deleted files, including symbolic links
+	 */
+	public long getFilesDeleted() {
+		return filesDeleted;
+	}
+
+	public long getFoldersDeleted() {
+		return foldersDeleted;
+	}
+
+	/**
+	 * 
+	 * @return the number of files and folders that could not be deleted
+	 */
+	public long getFailures() {
+		return failures;
+	}
+
+	/**
+	 * 
+	 * @return the sum of the sizes of the deleted files
+	 */
+	public long getBytesFreed() {
+		return bytesFreed;
+	}
+
+	/**
+	 * 
+	 * @return true if all files and folders were deleted
+	 */
+	public boolean isSuccess() {
+		return failures == 0;
+	}
+
+	@Override
+	public String toString() {
+		return "Deleted " + filesDeleted + " files and " + foldersDeleted + " folders (" + bytesFreed + " bytes), "
+				+ failures + " failures";
+	}
+}
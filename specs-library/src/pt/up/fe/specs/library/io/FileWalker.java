@@ -0,0 +1,496 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import pt.up.fe.specs.library.Log;
+
+/**
+ * Walks a directory tree in parallel, using a ForkJoinPool where each
+ * sub-directory is a separate task, or lazily as a Stream.
+ * 
+ * <p>
+ * Each directory is listed only once, and the attributes of each entry are
+ * read in a single call. When following symbolic links, links that point to
+ * an ancestor folder are detected and not followed.
+ * 
+ */
+public class FileWalker {
+
+	private static final LinkOption[] FOLLOW_LINKS = new LinkOption[0];
+	private static final LinkOption[] NOFOLLOW_LINKS = new LinkOption[] { LinkOption.NOFOLLOW_LINKS };
+
+	/**
+	 * Minimum number of threads of the default pool. Listing folders mostly
+	 * waits for the file system, so there can be more threads than processors.
+	 */
+	private static final int DEFAULT_PARALLELISM = 8;
+
+	/**
+	 * Lazily creates the default pool.
+	 */
+	private static class PoolHolder {
+		private static final ForkJoinPool POOL = newPool();
+	}
+
+	/**
+	 * The walks block on file system calls, so they use their own pool instead
+	 * of the common ForkJoinPool, which is shared with parallel streams.
+	 */
+	private static ForkJoinPool newPool() {
+		AtomicInteger counter = new AtomicInteger();
+		int parallelism = Math.max(DEFAULT_PARALLELISM, Runtime.getRuntime().availableProcessors());
+
+		return new ForkJoinPool(parallelism, pool -> {
+			// Worker threads are daemon threads
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			thread.setName("specs-walker-" + counter.incrementAndGet());
+			return thread;
+		}, null, false);
+	}
+
+	/**
+	 * 
+	 * @return the pool shared by the walkers of this class, which can also be
+	 *         used by other tasks that block on the file system
+	 */
+	static ForkJoinPool getDefaultPool() {
+		return PoolHolder.POOL;
+	}
+
+	private final ForkJoinPool pool;
+	private final boolean followLinks;
+	private final boolean sorted;
+
+	/**
+	 * Creates a walker that uses a pool shared by the walkers of this class,
+	 * follows symbolic links and returns files in a deterministic order.
+	 */
+	public FileWalker() {
+		this(true, true);
+	}
+
+	/**
+	 * Creates a walker that uses a pool shared by the walkers of this class.
+	 * 
+	 * @param followLinks
+	 *            if true, symbolic links to folders are followed
+	 * @param sorted
+	 *            if true, the entries of each folder are sorted by name
+	 */
+	public FileWalker(boolean followLinks, boolean sorted) {
+		this(getDefaultPool(), followLinks, sorted);
+	}
+
+	/**
+	 * 
+	 * @param pool
+	 *            the pool where directories will be listed
+	 * @param followLinks
+	 *            if true, symbolic links to folders are followed
+	 * @param sorted
+	 *            if true, the entries of each folder are sorted by name, and
+	 *            the result is always in the same order: the files of a
+	 *            folder, followed by the files of each sub-folder
+	 */
+	public FileWalker(ForkJoinPool pool, boolean followLinks, boolean sorted) {
+		this.pool = pool;
+		this.followLinks = followLinks;
+		this.sorted = sorted;
+	}
+
+	/**
+	 * 
+	 * @param folder
+	 * @param fileFilter
+	 *            the files that will be returned
+	 * @return all the files inside the given folder and its sub-folders,
+	 *         excluding folders, that are accepted by the filter
+	 */
+	public List<Path> getFiles(Path folder, Predicate<Path> fileFilter) {
+		BasicFileAttributes attrs = readFolderAttributes(folder);
+		if (attrs == null) {
+			return Collections.emptyList();
+		}
+
+		return pool.invoke(new WalkTask(folder, attrs, fileFilter, null));
+	}
+
+	/**
+	 * Lazily walks the given folder, yielding entries as folders are read. Only
+	 * the folders in the path currently being walked are kept open, and they
+	 * are closed when the walk ends or the stream is closed. The given folder
+	 * is not part of the result.
+	 * 
+	 * <p>
+	 * Entries are returned depth-first: a sub-folder is walked as soon as it
+	 * is found. If the walker is sorted, the entries of each folder are
+	 * visited by name.
+	 * 
+	 * <p>
+	 * The returned stream should be closed (e.g., with try-with-resources) if
+	 * it is not fully consumed.
+	 * 
+	 * @param folder
+	 * @param maxDepth
+	 *            the maximum number of levels of folders to visit (1 visits
+	 *            only the entries of the given folder)
+	 * @param matcher
+	 *            the entries that will be returned
+	 * @return
+	 */
+	public Stream<Path> walk(Path folder, int maxDepth, BiPredicate<Path, BasicFileAttributes> matcher) {
+		WalkIterator iterator = new WalkIterator(maxDepth, matcher);
+		Stream<Path> stream = StreamSupport.stream(
+				Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
+
+		stream = stream.onClose(iterator::close);
+
+		BasicFileAttributes attrs = readFolderAttributes(folder);
+		if (attrs != null) {
+			iterator.open(folder, attrs, null, 0);
+		}
+
+		return stream;
+	}
+
+	/**
+	 * Helper method which lazily returns all the files, excluding folders,
+	 * accepted by the filter.
+	 * 
+	 * @param folder
+	 * @param fileFilter
+	 * @return
+	 */
+	public Stream<Path> walkFiles(Path folder, Predicate<Path> fileFilter) {
+		return walk(folder, Integer.MAX_VALUE, (path, attrs) -> attrs.isRegularFile() && fileFilter.test(path));
+	}
+
+	private LinkOption[] getLinkOptions() {
+		return followLinks ? FOLLOW_LINKS : NOFOLLOW_LINKS;
+	}
+
+	/**
+	 * 
+	 * @param folder
+	 * @return the attributes of the folder, or null if it is not a folder
+	 */
+	private BasicFileAttributes readFolderAttributes(Path folder) {
+		BasicFileAttributes attrs;
+		try {
+			attrs = Files.readAttributes(folder, BasicFileAttributes.class, getLinkOptions());
+		} catch (NoSuchFileException e) {
+			Log.warn("Folder '" + folder + "' does not exist.");
+			return null;
+		} catch (IOException e) {
+			Log.warn("Could not read attributes of folder '" + folder + "': " + e.getMessage());
+			return null;
+		}
+
+		if (!attrs.isDirectory()) {
+			Log.warn("Folder '" + folder + "' does not exist.");
+			return null;
+		}
+
+		return attrs;
+	}
+
+	private BasicFileAttributes readAttributes(Path entry) {
+		try {
+			return Files.readAttributes(entry, BasicFileAttributes.class, getLinkOptions());
+		} catch (IOException e) {
+			// Can happen for broken links, or files deleted in the meantime
+			Log.lib("Could not read attributes of '" + entry + "': " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * 
+	 * @param folder
+	 * @param attrs
+	 * @return an object which uniquely identifies the folder
+	 */
+	private static Object getFolderKey(Path folder, BasicFileAttributes attrs) {
+		Object key = attrs.fileKey();
+		if (key != null) {
+			return key;
+		}
+
+		// File keys are not available in all platforms
+		try {
+			return folder.toRealPath();
+		} catch (IOException e) {
+			return folder.toAbsolutePath().normalize();
+		}
+	}
+
+	/**
+	 * Chain of folders from the root to the current folder, used to detect
+	 * cycles.
+	 */
+	private static class Ancestor {
+		private final Object key;
+		private final Ancestor parent;
+
+		public Ancestor(Object key, Ancestor parent) {
+			this.key = key;
+			this.parent = parent;
+		}
+
+		public boolean contains(Object key) {
+			for (Ancestor current = this; current != null; current = current.parent) {
+				if (current.key.equals(key)) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+	}
+
+	/**
+	 * Depth-first iterator over the entries of a folder tree.
+	 */
+	private class WalkIterator implements Iterator<Path>, Closeable {
+
+		private final int maxDepth;
+		private final BiPredicate<Path, BasicFileAttributes> matcher;
+		private final Deque<Frame> frames;
+
+		private Path next;
+
+		public WalkIterator(int maxDepth, BiPredicate<Path, BasicFileAttributes> matcher) {
+			this.maxDepth = maxDepth;
+			this.matcher = matcher;
+			this.frames = new ArrayDeque<>();
+			this.next = null;
+		}
+
+		/**
+		 * Opens a folder, making it the current folder being walked.
+		 */
+		private void open(Path folder, BasicFileAttributes attrs, Ancestor ancestors, int depth) {
+			Object key = getFolderKey(folder, attrs);
+			if (ancestors != null && ancestors.contains(key)) {
+				Log.lib("Skipping folder '" + folder + "', it is a link to an ancestor folder");
+				return;
+			}
+
+			DirectoryStream<Path> stream;
+			try {
+				stream = Files.newDirectoryStream(folder);
+			} catch (IOException e) {
+				Log.warn("Could not list folder '" + folder + "': " + e.getMessage());
+				return;
+			}
+
+			Iterator<Path> entries = stream.iterator();
+
+			// Sorting requires reading the whole folder
+			if (sorted) {
+				List<Path> sortedEntries = new ArrayList<>();
+				try {
+					entries.forEachRemaining(sortedEntries::add);
+				} catch (DirectoryIteratorException e) {
+					Log.warn("Could not list folder '" + folder + "': " + e.getCause().getMessage());
+				}
+				closeStream(stream);
+
+				Collections.sort(sortedEntries);
+				stream = null;
+				entries = sortedEntries.iterator();
+			}
+
+			frames.push(new Frame(stream, entries, new Ancestor(key, ancestors), depth + 1));
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next == null) {
+				next = advance();
+			}
+
+			return next != null;
+		}
+
+		@Override
+		public Path next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			Path current = next;
+			next = null;
+			return current;
+		}
+
+		private Path advance() {
+			while (!frames.isEmpty()) {
+				Frame frame = frames.peek();
+
+				Path entry = nextEntry(frame);
+				if (entry == null) {
+					frames.pop();
+					closeStream(frame.stream);
+					continue;
+				}
+
+				BasicFileAttributes attrs = readAttributes(entry);
+				if (attrs == null) {
+					continue;
+				}
+
+				if (attrs.isDirectory() && frame.depth < maxDepth) {
+					open(entry, attrs, frame.ancestors, frame.depth);
+				}
+
+				if (matcher.test(entry, attrs)) {
+					return entry;
+				}
+			}
+
+			return null;
+		}
+
+		private Path nextEntry(Frame frame) {
+			try {
+				return frame.entries.hasNext() ? frame.entries.next() : null;
+			} catch (DirectoryIteratorException e) {
+				Log.warn("Could not list folder: " + e.getCause().getMessage());
+				return null;
+			}
+		}
+
+		private void closeStream(DirectoryStream<Path> stream) {
+			if (stream == null) {
+				return;
+			}
+
+			try {
+				stream.close();
+			} catch (IOException e) {
+				Log.warn("Could not close folder stream: " + e.getMessage());
+			}
+		}
+
+		@Override
+		public void close() {
+			while (!frames.isEmpty()) {
+				closeStream(frames.pop().stream);
+			}
+		}
+	}
+
+	private static class Frame {
+		private final DirectoryStream<Path> stream;
+		private final Iterator<Path> entries;
+		private final Ancestor ancestors;
+		private final int depth;
+
+		public Frame(DirectoryStream<Path> stream, Iterator<Path> entries, Ancestor ancestors, int depth) {
+			this.stream = stream;
+			this.entries = entries;
+			this.ancestors = ancestors;
+			this.depth = depth;
+		}
+	}
+
+	private class WalkTask extends RecursiveTask<List<Path>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Path folder;
+		private final BasicFileAttributes folderAttrs;
+		private final Predicate<Path> fileFilter;
+		private final Ancestor ancestors;
+
+		public WalkTask(Path folder, BasicFileAttributes folderAttrs, Predicate<Path> fileFilter, Ancestor ancestors) {
+			this.folder = folder;
+			this.folderAttrs = folderAttrs;
+			this.fileFilter = fileFilter;
+			this.ancestors = ancestors;
+		}
+
+		@Override
+		protected List<Path> compute() {
+			Object key = getFolderKey(folder, folderAttrs);
+			if (ancestors != null && ancestors.contains(key)) {
+				Log.lib("Skipping folder '" + folder + "', it is a link to an ancestor folder");
+				return Collections.emptyList();
+			}
+			Ancestor chain = new Ancestor(key, ancestors);
+
+			List<Path> files = new ArrayList<>();
+			List<WalkTask> tasks = new ArrayList<>();
+
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+				for (Path entry : stream) {
+					BasicFileAttributes attrs = readAttributes(entry);
+					if (attrs == null) {
+						continue;
+					}
+
+					if (attrs.isDirectory()) {
+						tasks.add(new WalkTask(entry, attrs, fileFilter, chain));
+					} else if (attrs.isRegularFile() && fileFilter.test(entry)) {
+						files.add(entry);
+					}
+				}
+			} catch (IOException e) {
+				Log.warn("Could not list folder '" + folder + "': " + e.getMessage());
+				return Collections.emptyList();
+			}
+
+			if (sorted) {
+				Collections.sort(files);
+				tasks.sort((task1, task2) -> task1.folder.compareTo(task2.folder));
+			}
+
+			invokeAll(tasks);
+
+			for (WalkTask task : tasks) {
+				files.addAll(task.join());
+			}
+
+			return files;
+		}
+	}
+}
@@ -0,0 +1,511 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import pt.up.fe.specs.library.IoUtils;
+import pt.up.fe.specs.library.Log;
+import pt.up.fe.specs.library.io.AtomicFileWriter.SyncPolicy;
+import pt.up.fe.specs.library.utilities.LineReader;
+
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Snapshot of the size, modification time and, optionally, content hash of
+ * the files inside a root folder. Can be persisted to disk, and compared with
+ * a previous snapshot to find which files were added, modified or deleted.
+ * 
+ * <p>
+ * Hashes are computed in parallel, on the pool FileWalker uses for disk
+ * accesses by default, and large files are memory-mapped. When a previous
+ * snapshot is given, the hash of files with the same size and modification
+ * time is reused instead of being recomputed.
+ * 
+ */
+public class FingerprintIndex {
+
+	private static final String HEADER = "# fingerprint index v2";
+
+	/**
+	 * Version 1 did not escape paths.
+	 */
+	private static final String HEADER_V1 = "# fingerprint index v1";
+	private static final String HASH_ALGORITHM = "SHA-256";
+
+	/**
+	 * Files at least this large are memory-mapped when hashing.
+	 */
+	private static final long MAP_THRESHOLD = 256 * 1024;
+
+	private final File root;
+
+	/**
+	 * Fingerprints indexed by path relative to the root, using '/' as
+	 * separator.
+	 */
+	private final Map<String, Fingerprint> fingerprints;
+
+	private FingerprintIndex(File root, Map<String, Fingerprint> fingerprints) {
+		this.root = root;
+		this.fingerprints = fingerprints;
+	}
+
+	/**
+	 * Fingerprint of a single file.
+	 */
+	public static class Fingerprint {
+		private final long size;
+		private final long lastModified;
+		private final String hash;
+
+		public Fingerprint(long size, long lastModified, String hash) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.hash = hash;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * 
+		 * @return the content hash, in hexadecimal, or null if it was not
+		 *         computed
+		 */
+		public String getHash() {
+			return hash;
+		}
+
+		/**
+		 * 
+		 * @param previous
+		 * @return true if the file changed. If both fingerprints have hashes
+		 *         they are compared, otherwise size and modification time are
+		 *         compared
+		 */
+		public boolean isModified(Fingerprint previous) {
+			if (hash != null && previous.hash != null) {
+				return !hash.equals(previous.hash);
+			}
+
+			return size != previous.size || lastModified != previous.lastModified;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(size, lastModified, hash);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Fingerprint)) {
+				return false;
+			}
+
+			Fingerprint other = (Fingerprint) obj;
+			return size == other.size && lastModified == other.lastModified && Objects.equals(hash, other.hash);
+		}
+
+		@Override
+		public String toString() {
+			return size + " bytes, modified " + lastModified + (hash == null ? "" : ", " + hash);
+		}
+	}
+
+	/**
+	 * Differences between two snapshots.
+	 */
+	public static class Changes {
+		private final List<File> added;
+		private final List<File> modified;
+		private final List<File> deleted;
+
+		public Changes(List<File> added, List<File> modified, List<File> deleted) {
+			this.added = Collections.unmodifiableList(added);
+			this.modified = Collections.unmodifiableList(modified);
+			this.deleted = Collections.unmodifiableList(deleted);
+		}
+
+		public List<File> getAdded() {
+			return added;
+		}
+
+		public List<File> getModified() {
+			return modified;
+		}
+
+		public List<File> getDeleted() {
+			return deleted;
+		}
+
+		/**
+		 * 
+		 * @return the files that were added or modified
+		 */
+		public List<File> getChanged() {
+			List<File> changed = new ArrayList<>(added.size() + modified.size());
+			changed.addAll(added);
+			changed.addAll(modified);
+			return changed;
+		}
+
+		public boolean isEmpty() {
+			return added.isEmpty() && modified.isEmpty() && deleted.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			return "Added: " + added.size() + ", modified: " + modified.size() + ", deleted: " + deleted.size();
+		}
+	}
+
+	/**
+	 * Creates a snapshot of the given files.
+	 * 
+	 * @param root
+	 *            the folder the files are in
+	 * @param files
+	 * @param hash
+	 *            if true, computes the hash of the contents of each file
+	 * @param previous
+	 *            a previous snapshot of the same root, whose hashes are reused
+	 *            for files with the same size and modification time. Can be
+	 *            null
+	 * @return
+	 */
+	public static FingerprintIndex create(File root, Collection<File> files, boolean hash,
+			FingerprintIndex previous) {
+
+		return create(root, files, hash, previous, FileWalker.getDefaultPool());
+	}
+
+	/**
+	 * Creates a snapshot of the given files, computing the fingerprints on the
+	 * given pool.
+	 * 
+	 * @param root
+	 * @param files
+	 * @param hash
+	 * @param previous
+	 * @param pool
+	 * @return
+	 */
+	public static FingerprintIndex create(File root, Collection<File> files, boolean hash,
+			FingerprintIndex previous, ForkJoinPool pool) {
+
+		Path rootPath = root.toPath();
+		Map<String, Fingerprint> fingerprints = new ConcurrentHashMap<>();
+
+		// Parallel streams run on the pool of the thread that starts them, and
+		// not on the common pool, where blocking would delay unrelated tasks
+		pool.submit(() -> files.parallelStream().forEach(file -> {
+			String key = toKey(rootPath.relativize(file.toPath()));
+			Fingerprint previousFingerprint = previous == null ? null : previous.fingerprints.get(key);
+
+			Fingerprint fingerprint = newFingerprint(file.toPath(), hash, previousFingerprint);
+			if (fingerprint != null) {
+				fingerprints.put(key, fingerprint);
+			}
+		})).join();
+
+		return new FingerprintIndex(root, new TreeMap<>(fingerprints));
+	}
+
+	/**
+	 * IoUtils.sanitizePath is not used, since in Unix a backslash can be part
+	 * of a file name.
+	 * 
+	 * @param relativePath
+	 * @return the path using '/' as separator
+	 */
+	private static String toKey(Path relativePath) {
+		String key = relativePath.toString();
+		return File.separatorChar == '/' ? key : key.replace(File.separatorChar, '/');
+	}
+
+	private static Fingerprint newFingerprint(Path file, boolean hash, Fingerprint previous) {
+		BasicFileAttributes attrs;
+		try {
+			attrs = Files.readAttributes(file, BasicFileAttributes.class);
+		} catch (IOException e) {
+			Log.warn("Could not read attributes of '" + file + "': " + e.getMessage());
+			return null;
+		}
+
+		long size = attrs.size();
+		long lastModified = attrs.lastModifiedTime().toMillis();
+
+		if (!hash) {
+			return new Fingerprint(size, lastModified, null);
+		}
+
+		// Reuse hash if the file seems to be unchanged
+		if (previous != null && previous.hash != null && previous.size == size
+				&& previous.lastModified == lastModified) {
+			return previous;
+		}
+
+		try {
+			return new Fingerprint(size, lastModified, computeHash(file.toFile(), size));
+		} catch (IOException e) {
+			Log.warn("Could not hash file '" + file + "': " + e.getMessage());
+			return null;
+		}
+	}
+
+	private static String computeHash(File file, long size) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("Hash algorithm not available: " + HASH_ALGORITHM, e);
+		}
+
+		if (size >= MAP_THRESHOLD) {
+			MappedFile mappedFile = MappedFile.map(file);
+			for (int i = 0; i < mappedFile.getNumSegments(); i++) {
+				digest.update(mappedFile.getSegment(i));
+			}
+		} else {
+			digest.update(Files.readAllBytes(file.toPath()));
+		}
+
+		return BaseEncoding.base16().lowerCase().encode(digest.digest());
+	}
+
+	/**
+	 * Compares this snapshot with a previous snapshot of the same root.
+	 * 
+	 * @param previous
+	 * @return the files added, modified and deleted since the previous
+	 *         snapshot
+	 */
+	public Changes getChanges(FingerprintIndex previous) {
+		List<File> added = new ArrayList<>();
+		List<File> modified = new ArrayList<>();
+		List<File> deleted = new ArrayList<>();
+
+		for (Map.Entry<String, Fingerprint> entry : fingerprints.entrySet()) {
+			Fingerprint previousFingerprint = previous.fingerprints.get(entry.getKey());
+			if (previousFingerprint == null) {
+				added.add(new File(root, entry.getKey()));
+			} else if (entry.getValue().isModified(previousFingerprint)) {
+				modified.add(new File(root, entry.getKey()));
+			}
+		}
+
+		for (String path : previous.fingerprints.keySet()) {
+			if (!fingerprints.containsKey(path)) {
+				deleted.add(new File(root, path));
+			}
+		}
+
+		return new Changes(added, modified, deleted);
+	}
+
+	public File getRoot() {
+		return root;
+	}
+
+	/**
+	 * 
+	 * @return the fingerprints, indexed by path relative to the root
+	 */
+	public Map<String, Fingerprint> getFingerprints() {
+		return Collections.unmodifiableMap(fingerprints);
+	}
+
+	/**
+	 * Writes the snapshot to a file. The file is atomically replaced.
+	 * 
+	 * @param indexFile
+	 */
+	public void write(File indexFile) {
+		try (AtomicFileWriter writer = AtomicFileWriter.open(indexFile, SyncPolicy.FILE)) {
+			writer.write(HEADER);
+			writer.write('\n');
+
+			for (Map.Entry<String, Fingerprint> entry : fingerprints.entrySet()) {
+				Fingerprint fingerprint = entry.getValue();
+
+				writer.write(Long.toString(fingerprint.size));
+				writer.write('\t');
+				writer.write(Long.toString(fingerprint.lastModified));
+				writer.write('\t');
+				writer.write(fingerprint.hash == null ? "-" : fingerprint.hash);
+				writer.write('\t');
+				writer.write(escape(entry.getKey()));
+				writer.write('\n');
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Could not write fingerprint index '" + indexFile + "'", e);
+		}
+	}
+
+	/**
+	 * Escapes the characters that would break the line and field structure of
+	 * the index, and the escape character itself.
+	 */
+	private static String escape(String path) {
+		if (path.indexOf('\\') == -1 && path.indexOf('\t') == -1 && path.indexOf('\n') == -1
+				&& path.indexOf('\r') == -1) {
+			return path;
+		}
+
+		StringBuilder builder = new StringBuilder(path.length() + 8);
+		for (int i = 0; i < path.length(); i++) {
+			char c = path.charAt(i);
+			switch (c) {
+			case '\\':
+				builder.append("\\\\");
+				break;
+			case '\t':
+				builder.append("\\t");
+				break;
+			case '\n':
+				builder.append("\\n");
+				break;
+			case '\r':
+				builder.append("\\r");
+				break;
+			default:
+				builder.append(c);
+			}
+		}
+
+		return builder.toString();
+	}
+
+	private static String unescape(String path) {
+		if (path.indexOf('\\') == -1) {
+			return path;
+		}
+
+		StringBuilder builder = new StringBuilder(path.length());
+		for (int i = 0; i < path.length(); i++) {
+			char c = path.charAt(i);
+			if (c != '\\' || i + 1 == path.length()) {
+				builder.append(c);
+				continue;
+			}
+
+			i++;
+			char escaped = path.charAt(i);
+			switch (escaped) {
+			case 't':
+				builder.append('\t');
+				break;
+			case 'n':
+				builder.append('\n');
+				break;
+			case 'r':
+				builder.append('\r');
+				break;
+			default:
+				builder.append(escaped);
+			}
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * Reads a snapshot written with {@link #write(File)}.
+	 * 
+	 * @param indexFile
+	 * @param root
+	 * @return the snapshot, or an empty snapshot if the file does not exist
+	 */
+	public static FingerprintIndex read(File indexFile, File root) {
+		Map<String, Fingerprint> fingerprints = new TreeMap<>();
+
+		if (!indexFile.isFile()) {
+			return new FingerprintIndex(root, fingerprints);
+		}
+
+		try (LineReader reader = LineReader.createLineReader(indexFile)) {
+			String header = reader.nextLine();
+			boolean escaped = HEADER.equals(header);
+			if (!escaped && !HEADER_V1.equals(header)) {
+				throw new RuntimeException("File '" + indexFile + "' is not a fingerprint index");
+			}
+
+			String line;
+			while ((line = reader.nextLine()) != null) {
+				String[] fields = line.split("\t", 4);
+				if (fields.length != 4) {
+					throw new RuntimeException("Invalid line " + reader.getLastLineIndex() + " in fingerprint index '"
+							+ indexFile + "': " + line);
+				}
+
+				String hash = fields[2].equals("-") ? null : fields[2];
+				String path = escaped ? unescape(fields[3]) : fields[3];
+				fingerprints.put(path,
+						new Fingerprint(Long.parseLong(fields[0]), Long.parseLong(fields[1]), hash));
+			}
+		}
+
+		return new FingerprintIndex(root, fingerprints);
+	}
+
+	/**
+	 * Walks the root folder, compares the files with the snapshot stored in
+	 * the index file, and updates the index file with the new snapshot.
+	 * 
+	 * @param root
+	 * @param extension
+	 *            the extension of the files to consider
+	 * @param indexFile
+	 * @param hash
+	 *            if true, content hashes are used to detect modifications
+	 * @return the changes since the last call
+	 */
+	public static Changes update(File root, String extension, File indexFile, boolean hash) {
+		FingerprintIndex previous = read(indexFile, root);
+		FingerprintIndex current = create(root, IoUtils.getFilesRecursive(root, extension), hash, previous);
+
+		Changes changes = current.getChanges(previous);
+
+		// Modification times can change even if contents are the same
+		if (!current.fingerprints.equals(previous.fingerprints)) {
+			current.write(indexFile);
+		}
+
+		return changes;
+	}
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.io;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Deletes the contents of a folder, where each sub-folder is deleted as a
+ * separate task on a ForkJoinPool with a bounded number of workers. With a
+ * single worker, the contents are deleted in the calling thread.
+ * 
+ * <p>
+ * Symbolic links are never followed, the link itself is deleted.
+ * 
+ */
+public class FolderDeleter {
+
+	private final int workers;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Creates a deleter that starts a pool with the given number of workers
+	 * on each call, and shuts it down when the call ends.
+	 * 
+	 * @param workers
+	 *            the maximum number of threads deleting files concurrently
+	 */
+	public FolderDeleter(int workers) {
+		Preconditions.checkArgument(workers > 0, "Number of workers must be positive: " + workers);
+
+		this.workers = workers;
+		this.pool = null;
+	}
+
+	/**
+	 * Creates a deleter that runs on the given pool, for callers that delete
+	 * folders often. The pool is not shut down.
+	 * 
+	 * @param pool
+	 */
+	public FolderDeleter(ForkJoinPool pool) {
+		this.pool = Preconditions.checkNotNull(pool);
+		this.workers = pool.getParallelism();
+	}
+
+	/**
+	 * Deletes all the files and folders inside the given folder. The folder
+	 * itself is not deleted.
+	 * 
+	 * @param folder
+	 * @return the statistics of this call
+	 */
+	public DeleteStats deleteContents(Path folder) {
+		Counters counters = new Counters();
+		DeleteTask task = new DeleteTask(folder, counters);
+
+		if (pool != null) {
+			pool.invoke(task);
+		} else if (workers == 1) {
+			task.deleteSequentially();
+		} else {
+			ForkJoinPool callPool = new ForkJoinPool(workers);
+			try {
+				callPool.invoke(task);
+			} finally {
+				callPool.shutdown();
+			}
+		}
+
+		return new DeleteStats(counters.filesDeleted.sum(), counters.foldersDeleted.sum(), counters.failures.sum(),
+				counters.bytesFreed.sum());
+	}
+
+	private static class Counters {
+		private final LongAdder filesDeleted = new LongAdder();
+		private final LongAdder foldersDeleted = new LongAdder();
+		private final LongAdder failures = new LongAdder();
+		private final LongAdder bytesFreed = new LongAdder();
+	}
+
+	private static class DeleteTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Path folder;
+		private final Counters counters;
+
+		/**
+		 * True if all the contents of the folder were deleted. Otherwise, the
+		 * failures were already counted, and the folder is not deleted.
+		 */
+		private boolean emptied;
+
+		/**
+		 * True if some files of the folder could not be deleted
+		 */
+		private boolean failed;
+
+		public DeleteTask(Path folder, Counters counters) {
+			this.folder = folder;
+			this.counters = counters;
+			this.emptied = false;
+			this.failed = false;
+		}
+
+		@Override
+		protected void compute() {
+			List<DeleteTask> folders = deleteFiles();
+			if (folders == null) {
+				return;
+			}
+
+			invokeAll(folders);
+			deleteFolders(folders);
+		}
+
+		/**
+		 * Deletes the contents of the folder in the current thread.
+		 */
+		private void deleteSequentially() {
+			List<DeleteTask> folders = deleteFiles();
+			if (folders == null) {
+				return;
+			}
+
+			for (DeleteTask task : folders) {
+				task.deleteSequentially();
+			}
+			deleteFolders(folders);
+		}
+
+		/**
+		 * Deletes the files of the folder.
+		 * 
+		 * @return the tasks for the sub-folders that were found, or null if
+		 *         the folder could not be listed
+		 */
+		private List<DeleteTask> deleteFiles() {
+			List<DeleteTask> folders = new ArrayList<>();
+
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+				for (Path entry : stream) {
+					BasicFileAttributes attrs;
+					try {
+						attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+					} catch (IOException e) {
+						counters.failures.increment();
+						failed = true;
+						continue;
+					}
+
+					if (attrs.isDirectory()) {
+						folders.add(new DeleteTask(entry, counters));
+						continue;
+					}
+
+					if (!delete(entry, attrs.size())) {
+						failed = true;
+					}
+				}
+			} catch (IOException e) {
+				counters.failures.increment();
+				return null;
+			} catch (DirectoryIteratorException e) {
+				// The listing stopped midway, the sub-folders found so far are
+				// still deleted
+				counters.failures.increment();
+				failed = true;
+			}
+
+			return folders;
+		}
+
+		private void deleteFolders(List<DeleteTask> folders) {
+			for (DeleteTask task : folders) {
+				if (!task.emptied) {
+					failed = true;
+					continue;
+				}
+
+				try {
+					Files.delete(task.folder);
+					counters.foldersDeleted.increment();
+				} catch (IOException e) {
+					counters.failures.increment();
+					failed = true;
+				}
+			}
+
+			emptied = !failed;
+		}
+
+		private boolean delete(Path file, long size) {
+			try {
+				Files.delete(file);
+				counters.filesDeleted.increment();
+				counters.bytesFreed.add(size);
+				return true;
+			} catch (IOException e) {
+				counters.failures.increment();
+				return false;
+			}
+		}
+	}
+}
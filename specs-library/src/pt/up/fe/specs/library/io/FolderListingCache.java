@@ -0,0 +1,550 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import pt.up.fe.specs.library.Log;
+import pt.up.fe.specs.library.utilities.ExtensionFilter;
+
+/**
+ * Opt-in cache for the listings of folders, with the same contracts as
+ * IoUtils.getFilesRecursive and IoUtils.getFolders.
+ * 
+ * <p>
+ * Each listed folder is registered in a WatchService, and its listing is
+ * discarded when entries are created or deleted in it. Pending events are
+ * processed at the start of each call, so scanning an unchanged tree does not
+ * access the disk.
+ * 
+ * <p>
+ * Changes are only seen once the WatchService reports them. Some
+ * implementations poll the file system instead of receiving notifications
+ * from the OS (e.g., the default one on macOS checks every few seconds), and
+ * listings can be stale until the next poll. Callers that need to see their
+ * own changes immediately should call {@link #invalidateAll()}.
+ * 
+ * <p>
+ * Each watched folder uses an OS watch handle (e.g., inotify on Linux), which
+ * are limited per user. Folders that cannot be watched are not cached, and
+ * handles are released when listings are discarded.
+ * 
+ * <p>
+ * The cache is thread-safe. Folders are read from disk outside of the lock, so
+ * threads only wait for each other when accessing cached listings.
+ * 
+ */
+public class FolderListingCache implements Closeable {
+
+	private final WatchService watchService;
+
+	/**
+	 * Listings of folders, indexed by absolute path
+	 */
+	private final Map<Path, Listing> listings;
+
+	/**
+	 * Folders whose listings depend on each WatchKey. Several paths can share
+	 * a key (e.g., a folder and a link to it).
+	 */
+	private final Map<WatchKey, Set<Path>> watchedFolders;
+
+	/**
+	 * Results of getFilesRecursive
+	 */
+	private final Map<ResultKey, List<File>> results;
+
+	/**
+	 * Incremented every time listings are discarded. Listings read from disk
+	 * while a change was processed are not cached, since they might miss that
+	 * change.
+	 */
+	private long epoch;
+
+	private long hits;
+	private long misses;
+	private long invalidations;
+
+	public FolderListingCache() {
+		try {
+			this.watchService = FileSystems.getDefault().newWatchService();
+		} catch (IOException e) {
+			throw new RuntimeException("Could not create WatchService", e);
+		}
+
+		this.listings = new HashMap<>();
+		this.watchedFolders = new HashMap<>();
+		this.results = new HashMap<>();
+		this.epoch = 0;
+	}
+
+	/**
+	 * Cached version of IoUtils.getFilesRecursive.
+	 * 
+	 * @param folder
+	 * @param extension
+	 * @return an unmodifiable list with all the files inside the given folder,
+	 *         excluding other folders, that have a certain extension
+	 */
+	public List<File> getFilesRecursive(File folder, String extension) {
+		Path root = folder.toPath().toAbsolutePath().normalize();
+		ResultKey key = new ResultKey(folder, root, extension);
+
+		Walk walk;
+		synchronized (this) {
+			processEvents();
+
+			List<File> files = results.get(key);
+			if (files != null) {
+				hits++;
+				return files;
+			}
+
+			walk = new Walk(epoch);
+		}
+
+		List<File> files = null;
+		Listing listing = getListing(root, walk);
+		if (listing != null) {
+			files = new ArrayList<>();
+			Set<Object> ancestors = new HashSet<>();
+			collectFiles(folder, root, listing, new ExtensionFilter(extension), ancestors, files, walk);
+			files = Collections.unmodifiableList(files);
+		}
+
+		synchronized (this) {
+			count(walk);
+
+			// Only cached if no folder changed during the walk
+			if (files != null && walk.watched && walk.epoch == epoch) {
+				results.put(key, files);
+			}
+		}
+
+		if (files == null) {
+			Log.warn("Folder '" + folder + "' does not exist.");
+			return Collections.emptyList();
+		}
+
+		return files;
+	}
+
+	/**
+	 * Cached version of IoUtils.getFolders.
+	 * 
+	 * @param folder
+	 * @return all the folders inside the given folder, excluding other files
+	 */
+	public List<File> getFolders(File folder) {
+		Walk walk;
+		synchronized (this) {
+			processEvents();
+			walk = new Walk(epoch);
+		}
+
+		Listing listing = getListing(folder.toPath().toAbsolutePath().normalize(), walk);
+
+		synchronized (this) {
+			count(walk);
+		}
+
+		if (listing == null) {
+			return new ArrayList<>();
+		}
+
+		List<File> folders = new ArrayList<>(listing.folders.size());
+		for (String name : listing.folders) {
+			folders.add(new File(folder, name));
+		}
+
+		return folders;
+	}
+
+	private void count(Walk walk) {
+		if (walk.diskReads == 0) {
+			hits++;
+		} else {
+			misses++;
+		}
+	}
+
+	private void collectFiles(File folder, Path path, Listing listing, ExtensionFilter filter,
+			Set<Object> ancestors, List<File> files, Walk walk) {
+
+		if (!ancestors.add(listing.key)) {
+			// Link to an ancestor folder
+			return;
+		}
+
+		for (String name : listing.files) {
+			if (filter.accept(name)) {
+				files.add(new File(folder, name));
+			}
+		}
+
+		for (String name : listing.folders) {
+			Path subPath = path.resolve(name);
+			Listing subListing = getListing(subPath, walk);
+			if (subListing != null) {
+				collectFiles(new File(folder, name), subPath, subListing, filter, ancestors, files, walk);
+			}
+		}
+
+		ancestors.remove(listing.key);
+	}
+
+	/**
+	 * 
+	 * @param folder
+	 *            an absolute, normalized path
+	 * @param walk
+	 * @return the listing of the folder, or null if it could not be read
+	 */
+	private Listing getListing(Path folder, Walk walk) {
+		long readEpoch;
+		synchronized (this) {
+			Listing listing = listings.get(folder);
+			if (listing != null) {
+				return listing;
+			}
+
+			readEpoch = epoch;
+		}
+
+		walk.diskReads++;
+		Listing listing = readListing(folder);
+		if (listing == null) {
+			return null;
+		}
+
+		if (!listing.watched) {
+			walk.watched = false;
+			return listing;
+		}
+
+		synchronized (this) {
+			// Another thread may have read the folder in the meantime
+			Listing current = listings.get(folder);
+			if (current != null) {
+				if (current.watchKey != listing.watchKey && !watchedFolders.containsKey(listing.watchKey)) {
+					listing.watchKey.cancel();
+				}
+
+				return current;
+			}
+
+			if (readEpoch == epoch && listing.watchKey.isValid()) {
+				listings.put(folder, listing);
+				watchedFolders.computeIfAbsent(listing.watchKey, key -> new HashSet<>()).add(folder);
+			} else {
+				walk.watched = false;
+				if (!watchedFolders.containsKey(listing.watchKey)) {
+					listing.watchKey.cancel();
+				}
+			}
+		}
+
+		return listing;
+	}
+
+	private Listing readListing(Path folder) {
+		BasicFileAttributes folderAttrs;
+		try {
+			folderAttrs = Files.readAttributes(folder, BasicFileAttributes.class);
+		} catch (IOException e) {
+			return null;
+		}
+
+		if (!folderAttrs.isDirectory()) {
+			return null;
+		}
+
+		// Register before listing, so that changes during the listing are seen
+		WatchKey watchKey = null;
+		try {
+			watchKey = folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_DELETE);
+		} catch (IOException | UnsupportedOperationException e) {
+			Log.lib("Could not watch folder '" + folder + "', it will not be cached: " + e.getMessage());
+		}
+
+		List<String> files = new ArrayList<>();
+		List<String> folders = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder)) {
+			for (Path entry : stream) {
+				BasicFileAttributes attrs;
+				try {
+					attrs = Files.readAttributes(entry, BasicFileAttributes.class);
+				} catch (IOException e) {
+					continue;
+				}
+
+				if (attrs.isDirectory()) {
+					folders.add(entry.getFileName().toString());
+				} else if (attrs.isRegularFile()) {
+					files.add(entry.getFileName().toString());
+				}
+			}
+		} catch (IOException | DirectoryIteratorException e) {
+			Log.warn("Could not list folder '" + folder + "': " + e.getMessage());
+			return null;
+		}
+
+		Collections.sort(files);
+		Collections.sort(folders);
+
+		return new Listing(getFolderKey(folder, folderAttrs), files, folders, watchKey);
+	}
+
+	/**
+	 * 
+	 * @param folder
+	 * @param attrs
+	 * @return an object which uniquely identifies the folder, used to detect
+	 *         links to ancestor folders
+	 */
+	private static Object getFolderKey(Path folder, BasicFileAttributes attrs) {
+		Object key = attrs.fileKey();
+		if (key != null) {
+			return key;
+		}
+
+		// File keys are not available in all platforms
+		try {
+			return folder.toRealPath();
+		} catch (IOException e) {
+			return folder;
+		}
+	}
+
+	/**
+	 * Discards the listings of the folders that changed since the last call.
+	 */
+	private void processEvents() {
+		WatchKey key;
+		try {
+			while ((key = watchService.poll()) != null) {
+				// Listings being read may have missed the change
+				epoch++;
+
+				boolean overflow = false;
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						overflow = true;
+					}
+				}
+
+				if (overflow) {
+					invalidateAll();
+					continue;
+				}
+
+				Set<Path> folders = watchedFolders.get(key);
+				if (folders != null) {
+					for (Path folder : new ArrayList<>(folders)) {
+						invalidate(folder);
+					}
+				}
+
+				// If the key was cancelled or is no longer valid (e.g., folder
+				// was deleted), reset has no effect
+				key.reset();
+			}
+		} catch (ClosedWatchServiceException e) {
+			throw new RuntimeException("FolderListingCache has been closed", e);
+		}
+	}
+
+	private void invalidate(Path folder) {
+		Listing listing = listings.remove(folder);
+		if (listing != null) {
+			invalidations++;
+			release(folder, listing.watchKey);
+		}
+
+		results.keySet().removeIf(key -> folder.startsWith(key.root));
+	}
+
+	/**
+	 * Cancels the WatchKey when no listing depends on it.
+	 */
+	private void release(Path folder, WatchKey watchKey) {
+		Set<Path> folders = watchedFolders.get(watchKey);
+		if (folders != null) {
+			folders.remove(folder);
+			if (!folders.isEmpty()) {
+				return;
+			}
+
+			watchedFolders.remove(watchKey);
+		}
+
+		watchKey.cancel();
+	}
+
+	/**
+	 * Discards all cached listings.
+	 */
+	public synchronized void invalidateAll() {
+		epoch++;
+		invalidations += listings.size();
+
+		for (WatchKey watchKey : watchedFolders.keySet()) {
+			watchKey.cancel();
+		}
+
+		listings.clear();
+		watchedFolders.clear();
+		results.clear();
+	}
+
+	/**
+	 * 
+	 * @return the number of calls that were answered without reading the disk
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * 
+	 * @return the number of calls that had to read at least one folder from
+	 *         disk
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * 
+	 * @return the number of folder listings that were discarded due to changes
+	 */
+	public synchronized long getInvalidations() {
+		return invalidations;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "FolderListingCache(folders: " + listings.size() + ", hits: " + hits + ", misses: " + misses
+				+ ", invalidations: " + invalidations + ")";
+	}
+
+	@Override
+	public synchronized void close() {
+		// Also cancels all the keys
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			Log.warn("Could not close WatchService", e);
+		}
+
+		listings.clear();
+		watchedFolders.clear();
+		results.clear();
+	}
+
+	/**
+	 * State of a single call.
+	 */
+	private static class Walk {
+		/**
+		 * Value of the epoch when the call started
+		 */
+		private final long epoch;
+
+		/**
+		 * True if all the visited folders are being watched, and the result
+		 * can be cached
+		 */
+		private boolean watched;
+
+		private int diskReads;
+
+		public Walk(long epoch) {
+			this.epoch = epoch;
+			this.watched = true;
+			this.diskReads = 0;
+		}
+	}
+
+	private static class Listing {
+		private final Object key;
+		private final List<String> files;
+		private final List<String> folders;
+
+		/**
+		 * Null if the folder could not be watched
+		 */
+		private final WatchKey watchKey;
+		private final boolean watched;
+
+		public Listing(Object key, List<String> files, List<String> folders, WatchKey watchKey) {
+			this.key = key;
+			this.files = files;
+			this.folders = folders;
+			this.watchKey = watchKey;
+			this.watched = watchKey != null;
+		}
+	}
+	private static class ResultKey {
+		private final File folder;
+		private final Path root;
+		private final String extension;
+
+		public ResultKey(File folder, Path root, String extension) {
+			this.folder = folder;
+			this.root = root;
+			this.extension = extension;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(folder, extension);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof ResultKey)) {
+				return false;
+			}
+
+			ResultKey other = (ResultKey) obj;
+			return folder.equals(other.folder) && extension.equals(other.extension);
+		}
+	}
+}
@@ -0,0 +1,269 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Read-only view of a file mapped in memory, which does not copy the contents
+ * of the file to the heap.
+ * 
+ * <p>
+ * Files are mapped in segments of 1GB, so files larger than 2GB are
+ * supported. Positions are always absolute offsets in the file.
+ * 
+ */
+public class MappedFile {
+
+	private static final int SEGMENT_BITS = 30;
+	private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+	private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+	private final File file;
+	private final long size;
+	private final MappedByteBuffer[] segments;
+
+	private MappedFile(File file, long size, MappedByteBuffer[] segments) {
+		this.file = file;
+		this.size = size;
+		this.segments = segments;
+	}
+
+	/**
+	 * Maps the given file in memory. The file channel is closed after mapping,
+	 * the mapping remains valid until the object is garbage collected.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static MappedFile map(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			int numSegments = (int) ((size + SEGMENT_MASK) >>> SEGMENT_BITS);
+
+			MappedByteBuffer[] segments = new MappedByteBuffer[numSegments];
+			for (int i = 0; i < numSegments; i++) {
+				long start = i * SEGMENT_SIZE;
+				segments[i] = channel.map(MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+			}
+
+			return new MappedFile(file, size, segments);
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * 
+	 * @return the size of the file, in bytes
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * 
+	 * @param position
+	 * @return the byte at the given position of the file
+	 */
+	public byte get(long position) {
+		return segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & SEGMENT_MASK));
+	}
+
+	public int getNumSegments() {
+		return segments.length;
+	}
+
+	/**
+	 * 
+	 * @param index
+	 * @return a read-only buffer over the segment with the given index,
+	 *         starting at position (index * 1GB) of the file
+	 */
+	public ByteBuffer getSegment(int index) {
+		return segments[index].asReadOnlyBuffer();
+	}
+
+	/**
+	 * 
+	 * @param position
+	 * @param length
+	 * @return a read-only buffer over the given range of the file. If the
+	 *         range is inside a single segment the buffer is a view of the
+	 *         mapped memory, otherwise the bytes are copied
+	 */
+	public ByteBuffer getBuffer(long position, int length) {
+		checkRange(position, length);
+
+		// An empty file has no segments, and an empty range can start at the
+		// end of the last segment
+		if (length == 0) {
+			return ByteBuffer.allocate(0).asReadOnlyBuffer();
+		}
+
+		int segmentIndex = (int) (position >>> SEGMENT_BITS);
+		int offset = (int) (position & SEGMENT_MASK);
+
+		ByteBuffer segment = getSegment(segmentIndex);
+		if (offset + length <= segment.limit()) {
+			segment.position(offset);
+			segment.limit(offset + length);
+			return segment.slice();
+		}
+
+		// Range crosses segments
+		byte[] bytes = new byte[length];
+		getBytes(position, bytes, 0, length);
+		return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Copies bytes of the file into the given array.
+	 * 
+	 * @param position
+	 * @param dest
+	 * @param offset
+	 * @param length
+	 */
+	public void getBytes(long position, byte[] dest, int offset, int length) {
+		checkRange(position, length);
+
+		while (length > 0) {
+			ByteBuffer segment = getSegment((int) (position >>> SEGMENT_BITS));
+			segment.position((int) (position & SEGMENT_MASK));
+
+			int copied = Math.min(length, segment.remaining());
+			segment.get(dest, offset, copied);
+
+			position += copied;
+			offset += copied;
+			length -= copied;
+		}
+	}
+
+	/**
+	 * Decodes a range of the file to a String.
+	 * 
+	 * @param position
+	 * @param length
+	 * @param charset
+	 * @return
+	 */
+	public String decode(long position, int length, Charset charset) {
+		return charset.decode(getBuffer(position, length)).toString();
+	}
+
+	/**
+	 * A view of the whole file as a sequence of characters, where each byte is
+	 * a character (i.e., ISO-8859-1). For ASCII contents this is the same as
+	 * UTF-8. Can be used with scanners and regular expressions without
+	 * copying the file to the heap.
+	 * 
+	 * <p>
+	 * Throws an exception if the file is larger than Integer.MAX_VALUE bytes,
+	 * use {@link #asCharSequence(long, int)} to create a view over a window of
+	 * the file.
+	 * 
+	 * @return
+	 */
+	public CharSequence asCharSequence() {
+		Preconditions.checkState(size <= Integer.MAX_VALUE, "File '" + file
+				+ "' is too large for a single CharSequence, use a window");
+
+		return asCharSequence(0, (int) size);
+	}
+
+	/**
+	 * A view of a window of the file as a sequence of characters, where each
+	 * byte is a character (i.e., ISO-8859-1).
+	 * 
+	 * @param position
+	 * @param length
+	 * @return
+	 */
+	public CharSequence asCharSequence(long position, int length) {
+		checkRange(position, length);
+
+		return new ByteCharSequence(this, position, length);
+	}
+
+	private void checkRange(long position, int length) {
+		if (position < 0 || length < 0 || position + length > size) {
+			throw new IndexOutOfBoundsException("Range [" + position + ", " + (position + length)
+					+ "[ is outside of file '" + file + "' (" + size + " bytes)");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "MappedFile(" + file + ", " + size + " bytes)";
+	}
+
+	/**
+	 * CharSequence over bytes of a MappedFile.
+	 */
+	static class ByteCharSequence implements CharSequence {
+
+		private final MappedFile mappedFile;
+		private final long start;
+		private final int length;
+
+		ByteCharSequence(MappedFile mappedFile, long start, int length) {
+			this.mappedFile = mappedFile;
+			this.start = start;
+			this.length = length;
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index < 0 || index >= length) {
+				throw new IndexOutOfBoundsException("Index " + index + ", length " + length);
+			}
+
+			return (char) (mappedFile.get(start + index) & 0xFF);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			if (start < 0 || end > length || start > end) {
+				throw new IndexOutOfBoundsException("Range [" + start + ", " + end + "[, length " + length);
+			}
+
+			return new ByteCharSequence(mappedFile, this.start + start, end - start);
+		}
+
+		@Override
+		public String toString() {
+			return mappedFile.decode(start, length, StandardCharsets.ISO_8859_1);
+		}
+	}
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * OutputStream which compresses data in gzip format using several threads.
+ * 
+ * <p>
+ * Data is split in blocks, and each block is compressed concurrently as an
+ * independent gzip member. The output is a standard multi-member gzip file,
+ * which can be read by gunzip and by GZIPInputStream. Blocks are written in
+ * order, and the number of blocks waiting to be written is bounded.
+ * 
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+	private static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+	private final OutputStream out;
+	private final Executor executor;
+	private final int blockSize;
+	private final int maxPending;
+	private final Deque<CompletableFuture<byte[]>> pending;
+
+	private byte[] block;
+	private int blockLength;
+	private boolean wroteMember;
+	private boolean closed;
+
+	/**
+	 * Compresses in the common ForkJoinPool, using blocks of 1MB.
+	 * 
+	 * @param out
+	 */
+	public ParallelGzipOutputStream(OutputStream out) {
+		this(out, ForkJoinPool.commonPool(), DEFAULT_BLOCK_SIZE, 2 * ForkJoinPool.getCommonPoolParallelism() + 1);
+	}
+
+	/**
+	 * 
+	 * @param out
+	 * @param executor
+	 *            where blocks are compressed
+	 * @param blockSize
+	 *            number of uncompressed bytes in each gzip member
+	 * @param maxPending
+	 *            maximum number of blocks being compressed or waiting to be
+	 *            written
+	 */
+	public ParallelGzipOutputStream(OutputStream out, Executor executor, int blockSize, int maxPending) {
+		this.out = out;
+		this.executor = executor;
+		this.blockSize = blockSize;
+		this.maxPending = Math.max(1, maxPending);
+		this.pending = new ArrayDeque<>();
+
+		this.block = new byte[blockSize];
+		this.blockLength = 0;
+		this.wroteMember = false;
+		this.closed = false;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+
+		block[blockLength++] = (byte) b;
+
+		if (blockLength == blockSize) {
+			submitBlock();
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+
+		while (len > 0) {
+			int copied = Math.min(len, blockSize - blockLength);
+			System.arraycopy(b, off, block, blockLength, copied);
+			blockLength += copied;
+
+			if (blockLength == blockSize) {
+				submitBlock();
+			}
+
+			off += copied;
+			len -= copied;
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+	}
+
+	private void submitBlock() throws IOException {
+		byte[] data = block;
+		int length = blockLength;
+
+		pending.add(CompletableFuture.supplyAsync(() -> compress(data, length), executor));
+		wroteMember = true;
+
+		block = new byte[blockSize];
+		blockLength = 0;
+
+		while (pending.size() > maxPending) {
+			writeMember();
+		}
+	}
+
+	private static byte[] compress(byte[] data, int length) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(length / 2 + 64);
+
+		try (GZIPOutputStream gzip = new GZIPOutputStream(bytes, 64 * 1024)) {
+			gzip.write(data, 0, length);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Waits for the oldest block to be compressed, and writes it.
+	 */
+	private void writeMember() throws IOException {
+		byte[] member;
+		try {
+			member = pending.poll().join();
+		} catch (CompletionException e) {
+			throw new IOException("Could not compress block", e.getCause());
+		}
+
+		out.write(member);
+	}
+
+	/**
+	 * Compresses the buffered data and writes all blocks. Each flush ends the
+	 * current gzip member, so frequent flushes reduce the compression ratio.
+	 */
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+
+		if (blockLength > 0) {
+			submitBlock();
+		}
+
+		while (!pending.isEmpty()) {
+			writeMember();
+		}
+
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		try {
+			// An empty stream is still written as a gzip member
+			if (blockLength > 0 || !wroteMember) {
+				submitBlock();
+			}
+
+			while (!pending.isEmpty()) {
+				writeMember();
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import pt.up.fe.specs.library.IoUtils;
+
+/**
+ * Computes paths relative to a fixed base folder, for relativizing many files
+ * against the same base (see IoUtils.getRelativePath(File, File)).
+ * 
+ * <p>
+ * The base is canonicalized once, and the canonical forms of the parent
+ * folders of relativized files are cached, so files in the same folder only
+ * access the filesystem once. The file name itself is not canonicalized
+ * (i.e., if the file is a symbolic link, it is not resolved).
+ * 
+ * <p>
+ * This class is thread-safe.
+ * 
+ */
+public class PathRelativizer {
+
+	private final Path base;
+	private final Map<Path, Path> canonicalParents;
+
+	/**
+	 * 
+	 * @param baseFile
+	 *            the base folder. If it is not a folder, its parent is used
+	 */
+	public PathRelativizer(File baseFile) {
+		if (!baseFile.isDirectory()) {
+			baseFile = baseFile.getParentFile();
+			if (baseFile == null) {
+				baseFile = new File("");
+			}
+		}
+
+		this.base = IoUtils.getCanonicalFile(baseFile).toPath();
+		this.canonicalParents = new ConcurrentHashMap<>();
+	}
+
+	public Path getBase() {
+		return base;
+	}
+
+	/**
+	 * Returns the path of 'file', relative to the base folder, with
+	 * Path.relativize semantics.
+	 * 
+	 * <p>
+	 * The output path is normalized to use the '/' as path separator.
+	 * 
+	 * @param file
+	 * @return the relative path of the given file
+	 */
+	public String getRelativePath(File file) {
+		return IoUtils.sanitizePath(relativize(file).toString());
+	}
+
+	/**
+	 * 
+	 * @param file
+	 * @return the path of the file, relative to the base folder
+	 */
+	public Path relativize(File file) {
+		return base.relativize(getCanonicalPath(file));
+	}
+
+	private Path getCanonicalPath(File file) {
+		Path absolutePath = file.toPath().toAbsolutePath();
+
+		Path parent = absolutePath.getParent();
+		Path name = absolutePath.getFileName();
+		if (parent == null || name == null) {
+			return toCanonicalPath(absolutePath);
+		}
+
+		// Names such as '..' must be resolved by the filesystem
+		String nameString = name.toString();
+		if (nameString.equals(".") || nameString.equals("..")) {
+			return toCanonicalPath(absolutePath);
+		}
+
+		return canonicalParents.computeIfAbsent(parent, PathRelativizer::toCanonicalPath).resolve(name);
+	}
+
+	private static Path toCanonicalPath(Path path) {
+		try {
+			return path.toFile().getCanonicalFile().toPath();
+		} catch (IOException e) {
+			throw new RuntimeException("Could not get canonical path of '" + path + "'", e);
+		}
+	}
+
+	/**
+	 * Discards the cached canonical folders (e.g., if links changed).
+	 */
+	public void clearCache() {
+		canonicalParents.clear();
+	}
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutionException;
+
+import pt.up.fe.specs.library.IoUtils;
+import pt.up.fe.specs.library.Log;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * In-memory cache of the contents of Java resources, bounded by the total
+ * number of bytes, with least-recently-used eviction.
+ * 
+ * <p>
+ * Resources are stored encoded, as they are in the classpath, and decoded on
+ * each access. Concurrent misses on the same resource load it only once.
+ * 
+ * <p>
+ * Can be installed with {@link IoUtils#setResourceCache(ResourceCache)}, so
+ * that it is used by IoUtils.getResource and its callers.
+ * 
+ */
+public class ResourceCache {
+
+	private final LoadingCache<String, byte[]> cache;
+
+	/**
+	 * 
+	 * @param maxBytes
+	 *            maximum number of bytes kept in the cache
+	 */
+	public ResourceCache(long maxBytes) {
+		Preconditions.checkArgument(maxBytes >= 0, "Maximum number of bytes must not be negative: " + maxBytes);
+
+		this.cache = CacheUtils.newWeightedBuilder(maxBytes, (String name, byte[] bytes) -> bytes.length)
+				.recordStats()
+				.build(new CacheLoader<String, byte[]>() {
+					@Override
+					public byte[] load(String resourceName) throws IOException {
+						return loadResource(resourceName);
+					}
+				});
+	}
+
+	private static byte[] loadResource(String resourceName) throws IOException {
+		try (InputStream inputStream = IoUtils.resourceToStream(resourceName)) {
+			if (inputStream == null) {
+				throw new MissingResourceException(resourceName);
+			}
+
+			return ByteStreams.toByteArray(inputStream);
+		}
+	}
+
+	/**
+	 * 
+	 * @param resourceName
+	 * @return the bytes of the resource, or null if the resource could not be
+	 *         loaded. The returned array must not be modified
+	 */
+	public byte[] getBytes(String resourceName) {
+		try {
+			return cache.get(resourceName);
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			if (!(e.getCause() instanceof MissingResourceException)) {
+				Log.warn("Could not open resource '" + resourceName + "'", e);
+			}
+
+			return null;
+		}
+	}
+
+	/**
+	 * Cached version of IoUtils.getResource.
+	 * 
+	 * @param resourceName
+	 * @return a string with the contents of the resource, null if the resource
+	 *         does not exist, or an empty string if it could not be read
+	 */
+	public String getResource(String resourceName) {
+		byte[] bytes;
+		try {
+			bytes = cache.get(resourceName);
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			// Same results as IoUtils.getResource without a cache
+			if (e.getCause() instanceof MissingResourceException) {
+				Log.warn("Could not get InputStream.");
+				return null;
+			}
+
+			Log.warn("Could not open resource '" + resourceName + "'", e);
+			return "";
+		}
+
+		return IoUtils.decode(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Removes all resources from the cache.
+	 */
+	public void clear() {
+		cache.invalidateAll();
+	}
+
+	/**
+	 * 
+	 * @return statistics of the cache (hit rate, evictions, load times...)
+	 */
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	/**
+	 * 
+	 * @return the number of bytes currently in the cache
+	 */
+	public long getCachedBytes() {
+		long bytes = 0;
+		for (byte[] value : cache.asMap().values()) {
+			bytes += value.length;
+		}
+
+		return bytes;
+	}
+
+	@Override
+	public String toString() {
+		CacheStats stats = getStats();
+		return "ResourceCache(resources: " + cache.size() + ", hit rate: " + stats.hitRate() + ", evictions: "
+				+ stats.evictionCount() + ")";
+	}
+
+	/**
+	 * Thrown by the loader when the resource does not exist, since the cache
+	 * does not support null values.
+	 */
+	private static class MissingResourceException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		public MissingResourceException(String resourceName) {
+			super("Could not load resource '" + resourceName + "'");
+		}
+	}
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.utilities;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A line as a slice of a byte buffer, returned by {@link ByteLineScanner}.
+ * 
+ * <p>
+ * Instances are reused: the contents are only valid until the next line is
+ * read. Use {@link #toString()} or {@link #toBytes()} to keep a line.
+ * 
+ * <p>
+ * As a CharSequence, each byte is a character (i.e., ISO-8859-1), which is
+ * exact for ASCII contents. {@link #toString()} decodes the bytes as UTF-8.
+ * 
+ */
+public class ByteLine implements CharSequence {
+
+	private byte[] bytes;
+	private int offset;
+	private int length;
+	private long lineIndex;
+
+	ByteLine() {
+		this.bytes = new byte[0];
+		this.offset = 0;
+		this.length = 0;
+		this.lineIndex = 0;
+	}
+
+	void set(byte[] bytes, int offset, int length, long lineIndex) {
+		this.bytes = bytes;
+		this.offset = offset;
+		this.length = length;
+		this.lineIndex = lineIndex;
+	}
+
+	/**
+	 * 
+	 * @return the number of the line (starts at 1)
+	 */
+	public long getLineIndex() {
+		return lineIndex;
+	}
+
+	/**
+	 * 
+	 * @return the buffer that contains the line. Must not be modified
+	 */
+	public byte[] getBuffer() {
+		return bytes;
+	}
+
+	/**
+	 * 
+	 * @return the position of the first byte of the line in the buffer
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	public boolean isEmpty() {
+		return length == 0;
+	}
+
+	public byte byteAt(int index) {
+		checkIndex(index);
+		return bytes[offset + index];
+	}
+
+	@Override
+	public char charAt(int index) {
+		checkIndex(index);
+		return (char) (bytes[offset + index] & 0xFF);
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("Index " + index + ", length " + length);
+		}
+	}
+
+	/**
+	 * Copies the characters, since the line is reused.
+	 */
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > length || start > end) {
+			throw new IndexOutOfBoundsException("Range [" + start + ", " + end + "[, length " + length);
+		}
+
+		return new String(bytes, offset + start, end - start, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * 
+	 * @param prefix
+	 *            an ASCII string
+	 * @return true if the line starts with the given prefix
+	 */
+	public boolean startsWith(CharSequence prefix) {
+		return regionMatches(0, prefix);
+	}
+
+	/**
+	 * 
+	 * @param suffix
+	 *            an ASCII string
+	 * @return true if the line ends with the given suffix
+	 */
+	public boolean endsWith(CharSequence suffix) {
+		return regionMatches(length - suffix.length(), suffix);
+	}
+
+	/**
+	 * 
+	 * @param string
+	 *            an ASCII string
+	 * @return true if the line contains the given string
+	 */
+	public boolean contains(CharSequence string) {
+		return indexOf(string) != -1;
+	}
+
+	/**
+	 * 
+	 * @param string
+	 *            an ASCII string
+	 * @return the index of the first occurrence of the string in the line, or
+	 *         -1 if it does not occur
+	 */
+	public int indexOf(CharSequence string) {
+		int stringLength = string.length();
+		if (stringLength == 0) {
+			return 0;
+		}
+
+		char first = string.charAt(0);
+		int last = length - stringLength;
+		for (int i = 0; i <= last; i++) {
+			if ((bytes[offset + i] & 0xFF) == first && regionMatches(i, string)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * 
+	 * @param b
+	 * @return the index of the first occurrence of the byte, or -1 if it does
+	 *         not occur
+	 */
+	public int indexOf(byte b) {
+		int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			if (bytes[i] == b) {
+				return i - offset;
+			}
+		}
+
+		return -1;
+	}
+
+	private boolean regionMatches(int start, CharSequence string) {
+		int stringLength = string.length();
+		if (start < 0 || start + stringLength > length) {
+			return false;
+		}
+
+		int base = offset + start;
+		for (int i = 0; i < stringLength; i++) {
+			if ((bytes[base + i] & 0xFF) != string.charAt(i)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * 
+	 * @return a copy of the bytes of the line
+	 */
+	public byte[] toBytes() {
+		return Arrays.copyOfRange(bytes, offset, offset + length);
+	}
+
+	/**
+	 * Decodes the line as UTF-8. This creates a new String, which remains
+	 * valid after the next line is read.
+	 */
+	@Override
+	public String toString() {
+		return new String(bytes, offset, length, StandardCharsets.UTF_8);
+	}
+}
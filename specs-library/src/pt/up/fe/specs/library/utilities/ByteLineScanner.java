@@ -0,0 +1,247 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.utilities;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import pt.up.fe.specs.library.Log;
+import pt.up.fe.specs.library.io.CompressionUtils;
+
+/**
+ * Reads lines by scanning raw bytes for newlines, without allocating objects
+ * per line.
+ * 
+ * <p>
+ * Bytes are read into a large buffer that is reused, and each line is
+ * returned as the same {@link ByteLine} instance, pointing to a slice of the
+ * buffer. Lines are terminated by '\n', '\r' or "\r\n", as in
+ * {@link LineReader}, and the terminators are not included. The buffer grows
+ * if a line does not fit in it.
+ * 
+ * <p>
+ * Compared with {@link LineReader}, which creates a String per line, this is
+ * meant for processing large files where most lines are discarded.
+ * 
+ */
+public class ByteLineScanner implements Closeable {
+
+	private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+	private final InputStream stream;
+	private final ByteLine line;
+
+	private byte[] buffer;
+
+	/**
+	 * Start of the next line.
+	 */
+	private int start;
+
+	/**
+	 * End of the valid bytes in the buffer.
+	 */
+	private int end;
+
+	/**
+	 * Position after the bytes already searched for a newline.
+	 */
+	private int scanned;
+
+	/**
+	 * True if the last line ended with '\r', and a '\n' that follows it is
+	 * part of the same terminator.
+	 */
+	private boolean skipLf;
+
+	private boolean streamEnded;
+	private long lineIndex;
+
+	/**
+	 * 
+	 * @param stream
+	 * @param bufferSize
+	 *            initial size of the buffer
+	 */
+	public ByteLineScanner(InputStream stream, int bufferSize) {
+		this.stream = stream;
+		this.line = new ByteLine();
+		this.buffer = new byte[Math.max(1, bufferSize)];
+		this.start = 0;
+		this.end = 0;
+		this.scanned = 0;
+		this.skipLf = false;
+		this.streamEnded = false;
+		this.lineIndex = 0;
+	}
+
+	public ByteLineScanner(InputStream stream) {
+		this(stream, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Opens a file for scanning. Compressed files are transparently
+	 * decompressed (see {@link CompressionUtils}).
+	 * 
+	 * @param file
+	 * @return
+	 */
+	public static ByteLineScanner open(File file) {
+		try {
+			return new ByteLineScanner(CompressionUtils.openInputStream(file));
+		} catch (IOException e) {
+			throw new RuntimeException("Could not open file '" + file + "'", e);
+		}
+	}
+
+	/**
+	 * Calls the consumer with each line of the file.
+	 * 
+	 * @param file
+	 * @param consumer
+	 *            receives a line that is only valid during the call
+	 * @return the number of lines in the file
+	 */
+	public static long scan(File file, Consumer<ByteLine> consumer) {
+		try (ByteLineScanner scanner = open(file)) {
+			return scanner.forEach(consumer);
+		}
+	}
+
+	/**
+	 * Calls the consumer with each remaining line.
+	 * 
+	 * @param consumer
+	 *            receives a line that is only valid during the call
+	 * @return the number of lines read
+	 */
+	public long forEach(Consumer<ByteLine> consumer) {
+		long firstIndex = lineIndex;
+
+		ByteLine currentLine;
+		while ((currentLine = nextLine()) != null) {
+			consumer.accept(currentLine);
+		}
+
+		return lineIndex - firstIndex;
+	}
+
+	/**
+	 * 
+	 * @return the next line, which is only valid until this method is called
+	 *         again, or null if the end of the stream has been reached
+	 */
+	public ByteLine nextLine() {
+		while (true) {
+			if (skipLf) {
+				if (start == end && !streamEnded) {
+					fill();
+					continue;
+				}
+
+				if (start < end && buffer[start] == '\n') {
+					start++;
+					scanned = start;
+				}
+
+				skipLf = false;
+			}
+
+			// Search for a terminator in bytes not yet scanned
+			for (int i = scanned; i < end; i++) {
+				byte current = buffer[i];
+				if (current == '\n') {
+					return setLine(i, i + 1);
+				}
+
+				if (current == '\r') {
+					// A '\n' after the '\r' may not have been read yet
+					skipLf = true;
+					return setLine(i, i + 1);
+				}
+			}
+			scanned = end;
+
+			if (streamEnded) {
+				// Last line without terminator
+				if (start < end) {
+					return setLine(end, end);
+				}
+
+				return null;
+			}
+
+			fill();
+		}
+	}
+
+	private ByteLine setLine(int lineEnd, int nextStart) {
+		lineIndex++;
+		line.set(buffer, start, lineEnd - start, lineIndex);
+
+		start = nextStart;
+		scanned = nextStart;
+
+		return line;
+	}
+
+	/**
+	 * Reads more bytes into the buffer, moving the current line to the start
+	 * of the buffer, or growing the buffer if the line already fills it.
+	 */
+	private void fill() {
+		if (start > 0) {
+			int remaining = end - start;
+			System.arraycopy(buffer, start, buffer, 0, remaining);
+			scanned -= start;
+			end = remaining;
+			start = 0;
+		} else if (end == buffer.length) {
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		}
+
+		try {
+			int read = stream.read(buffer, end, buffer.length - end);
+			if (read == -1) {
+				streamEnded = true;
+				return;
+			}
+
+			end += read;
+		} catch (IOException e) {
+			throw new RuntimeException("Could not read line " + (lineIndex + 1), e);
+		}
+	}
+
+	/**
+	 * 
+	 * @return the number of the last line returned (starts at 1)
+	 */
+	public long getLastLineIndex() {
+		return lineIndex;
+	}
+
+	@Override
+	public void close() {
+		try {
+			stream.close();
+		} catch (IOException e) {
+			Log.warn("Could not close ByteLineScanner.", e);
+		}
+	}
+}
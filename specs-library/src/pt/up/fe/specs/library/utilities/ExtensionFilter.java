@@ -11,14 +11,25 @@ public class ExtensionFilter implements FilenameFilter {
 		this.extension = extension;
 		this.separator = DEFAULT_EXTENSION_SEPARATOR;
 		// this.separator = "";
+		this.suffix = separator + extension.toLowerCase();
 	}
 
 	@Override
 	public boolean accept(File dir, String name) {
-		String suffix = separator + extension.toLowerCase();
-		return name.toLowerCase().endsWith(suffix);
+		return accept(name);
+	}
+
+	/**
+	 * 
+	 * @param name
+	 *            the name of a file
+	 * @return true if the name ends with the extension (case-insensitive)
+	 */
+	public boolean accept(String name) {
+		return name.regionMatches(true, name.length() - suffix.length(), suffix, 0, suffix.length());
 	}
 
 	private String extension;
 	private String separator;
+	private final String suffix;
 }
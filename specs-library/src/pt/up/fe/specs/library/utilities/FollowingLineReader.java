@@ -0,0 +1,439 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.utilities;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import pt.up.fe.specs.library.Log;
+
+/**
+ * Reads the lines appended to a file that keeps growing (e.g., a log), as in
+ * 'tail -F'.
+ * 
+ * <p>
+ * The reader keeps the byte position after the last line read, so each poll
+ * only reads the new data. Only complete lines are returned, a line without a
+ * terminator is kept until its terminator is written. Lines are terminated by
+ * '\n', '\r' or "\r\n", as in LineReader, and decoded as UTF-8. A '\r' ends
+ * the line as soon as it is read, and a '\n' that is written after it is
+ * skipped.
+ * 
+ * <p>
+ * If the file is replaced (rotation), which is detected by a change of its
+ * file key (e.g., inode), the rest of the old file is read and the new file is
+ * read from the beginning. If the file becomes smaller than the current
+ * position (truncation), it is read again from the beginning. On filesystems
+ * without file keys, only truncation is detected.
+ * 
+ * <p>
+ * When waiting for new lines, the folder of the file is watched with a
+ * WatchService, and the file is also checked periodically with an
+ * exponential backoff, since not all filesystems report modifications.
+ * 
+ */
+public class FollowingLineReader implements Closeable {
+
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+	private static final long MIN_BACKOFF_MILLIS = 10;
+	private static final long MAX_BACKOFF_MILLIS = 1000;
+
+	private final Path path;
+	private final WatchService watchService;
+	private final ByteBuffer readBuffer;
+
+	private FileChannel channel;
+	private Object fileKey;
+
+	/**
+	 * Position in the current file after the last byte read.
+	 */
+	private long position;
+
+	/**
+	 * Bytes of the line that has not been terminated yet.
+	 */
+	private byte[] pending;
+	private int pendingLength;
+
+	/**
+	 * True if the last byte read was a '\r', and a '\n' that follows it is
+	 * part of the same terminator.
+	 */
+	private boolean skipLf;
+
+	private int currentLineIndex;
+	private int numRotations;
+	private boolean closed;
+
+	private FollowingLineReader(Path path, long position) {
+		this.path = path.toAbsolutePath();
+		this.watchService = newWatchService(this.path);
+		this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+		this.channel = null;
+		this.fileKey = null;
+		this.position = position;
+
+		this.pending = new byte[256];
+		this.pendingLength = 0;
+		this.skipLf = false;
+
+		this.currentLineIndex = 0;
+		this.numRotations = 0;
+		this.closed = false;
+
+		openFile(position);
+	}
+
+	/**
+	 * Follows a file from the given position. The file does not need to exist
+	 * yet.
+	 * 
+	 * @param file
+	 * @param position
+	 *            the byte position where reading starts, which should be the
+	 *            start of a line (e.g., a value returned by
+	 *            {@link #getPosition()})
+	 * @return
+	 */
+	public static FollowingLineReader open(File file, long position) {
+		return new FollowingLineReader(file.toPath(), position);
+	}
+
+	/**
+	 * Follows a file from its beginning.
+	 * 
+	 * @param file
+	 * @return
+	 */
+	public static FollowingLineReader open(File file) {
+		return open(file, 0);
+	}
+
+	/**
+	 * Follows a file from its current end, returning only lines written after
+	 * this call.
+	 * 
+	 * @param file
+	 * @return
+	 */
+	public static FollowingLineReader openAtEnd(File file) {
+		return open(file, file.length());
+	}
+
+	private static WatchService newWatchService(Path path) {
+		Path folder = path.getParent();
+		if (folder == null) {
+			return null;
+		}
+
+		try {
+			WatchService watchService = FileSystems.getDefault().newWatchService();
+			folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+			return watchService;
+		} catch (IOException | UnsupportedOperationException e) {
+			Log.lib("Could not watch folder '" + folder + "', using only periodic checks: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Opens the file, if it exists.
+	 */
+	private void openFile(long startPosition) {
+		try {
+			channel = FileChannel.open(path, StandardOpenOption.READ);
+			fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+			position = Math.min(startPosition, channel.size());
+			skipLf = position > 0 && isCarriageReturn(position - 1);
+		} catch (NoSuchFileException e) {
+			channel = null;
+			fileKey = null;
+			position = 0;
+			skipLf = false;
+		} catch (IOException e) {
+			throw new RuntimeException("Could not open file '" + path + "'", e);
+		}
+	}
+
+	/**
+	 * When resuming after a line ended by '\r', a '\n' at the position is
+	 * part of that terminator.
+	 */
+	private boolean isCarriageReturn(long bytePosition) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(1);
+		return channel.read(buffer, bytePosition) == 1 && buffer.get(0) == '\r';
+	}
+
+	private void closeFile() {
+		if (channel == null) {
+			return;
+		}
+
+		try {
+			channel.close();
+		} catch (IOException e) {
+			Log.warn("Could not close file '" + path + "'.", e);
+		}
+		channel = null;
+	}
+
+	/**
+	 * Returns the complete lines appended since the last call, without
+	 * waiting.
+	 * 
+	 * @return the new lines, which can be empty
+	 */
+	public List<String> poll() {
+		if (closed) {
+			throw new RuntimeException("FollowingLineReader has been closed");
+		}
+
+		List<String> lines = new ArrayList<>();
+
+		try {
+			checkFile(lines);
+
+			if (channel != null) {
+				readAvailable(lines);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Could not read file '" + path + "'", e);
+		}
+
+		return lines;
+	}
+
+	/**
+	 * Returns the complete lines appended since the last call, waiting until
+	 * there is at least one line or the timeout expires.
+	 * 
+	 * @param timeout
+	 * @param unit
+	 * @return the new lines, or an empty list if the timeout expired
+	 */
+	public List<String> poll(long timeout, TimeUnit unit) {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		long backoff = MIN_BACKOFF_MILLIS;
+
+		while (true) {
+			List<String> lines = poll();
+			if (!lines.isEmpty()) {
+				return lines;
+			}
+
+			long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (remaining <= 0) {
+				return lines;
+			}
+
+			// Check again immediately after a change, or back off otherwise
+			if (waitForChange(Math.min(backoff, remaining))) {
+				backoff = MIN_BACKOFF_MILLIS;
+			} else {
+				backoff = Math.min(2 * backoff, MAX_BACKOFF_MILLIS);
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @param millis
+	 * @return true if the folder of the file changed
+	 */
+	private boolean waitForChange(long millis) {
+		try {
+			if (watchService == null) {
+				Thread.sleep(millis);
+				return false;
+			}
+
+			WatchKey key = watchService.poll(millis, TimeUnit.MILLISECONDS);
+			if (key == null) {
+				return false;
+			}
+
+			// Discard other events that are already queued
+			do {
+				key.pollEvents();
+				key.reset();
+			} while ((key = watchService.poll()) != null);
+
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for file '" + path + "'", e);
+		}
+	}
+
+	/**
+	 * Detects if the file was created, rotated or truncated.
+	 */
+	private void checkFile(List<String> lines) throws IOException {
+		BasicFileAttributes attrs;
+		try {
+			attrs = Files.readAttributes(path, BasicFileAttributes.class);
+		} catch (NoSuchFileException e) {
+			// File was moved and not recreated yet, keep reading the old file
+			return;
+		}
+
+		if (channel == null) {
+			openFile(0);
+			return;
+		}
+
+		Object currentKey = attrs.fileKey();
+		if (currentKey != null && !currentKey.equals(fileKey)) {
+			// Rotated: finish the old file, including a last line without
+			// terminator
+			readAvailable(lines);
+			if (pendingLength > 0) {
+				addLine(lines);
+			}
+
+			closeFile();
+			openFile(0);
+			numRotations++;
+			return;
+		}
+
+		if (attrs.size() < position) {
+			// Truncated: discard incomplete line and start again
+			pendingLength = 0;
+			position = 0;
+			skipLf = false;
+		}
+	}
+
+	/**
+	 * Reads from the current position to the end of the file.
+	 */
+	private void readAvailable(List<String> lines) throws IOException {
+		while (true) {
+			readBuffer.clear();
+			int read = channel.read(readBuffer, position);
+			if (read <= 0) {
+				return;
+			}
+			position += read;
+
+			byte[] bytes = readBuffer.array();
+			int lineStart = 0;
+			for (int i = 0; i < read; i++) {
+				byte current = bytes[i];
+
+				if (skipLf) {
+					skipLf = false;
+					if (current == '\n') {
+						lineStart = i + 1;
+						continue;
+					}
+				}
+
+				if (current == '\n' || current == '\r') {
+					appendPending(bytes, lineStart, i - lineStart);
+					addLine(lines);
+					lineStart = i + 1;
+
+					// The '\n' of "\r\n" may only be read in the next poll
+					skipLf = current == '\r';
+				}
+			}
+
+			appendPending(bytes, lineStart, read - lineStart);
+		}
+	}
+
+	private void appendPending(byte[] bytes, int offset, int length) {
+		if (pendingLength + length > pending.length) {
+			pending = Arrays.copyOf(pending, Math.max(2 * pending.length, pendingLength + length));
+		}
+
+		System.arraycopy(bytes, offset, pending, pendingLength, length);
+		pendingLength += length;
+	}
+
+	private void addLine(List<String> lines) {
+		lines.add(new String(pending, 0, pendingLength, StandardCharsets.UTF_8));
+		pendingLength = 0;
+		currentLineIndex++;
+	}
+
+	/**
+	 * 
+	 * @return the number of lines returned so far
+	 */
+	public int getLastLineIndex() {
+		return currentLineIndex;
+	}
+
+	/**
+	 * 
+	 * @return the byte position in the current file after the last complete
+	 *         line, which can be used to resume following the file
+	 */
+	public long getPosition() {
+		return position - pendingLength;
+	}
+
+	/**
+	 * 
+	 * @return the number of times the file was replaced
+	 */
+	public int getNumRotations() {
+		return numRotations;
+	}
+
+	public File getFile() {
+		return path.toFile();
+	}
+
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		closeFile();
+
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				Log.warn("Could not close FollowingLineReader.", e);
+			}
+		}
+	}
+}
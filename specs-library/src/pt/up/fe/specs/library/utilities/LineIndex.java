@@ -0,0 +1,361 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.utilities;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import pt.up.fe.specs.library.Log;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Sparse index of the lines of a file, which records the byte offset of every
+ * Kth line. Allows opening a LineReader at any line by reading at most K lines.
+ * 
+ * <p>
+ * The index is built with a single scan over the bytes of the file, and can be
+ * persisted next to the file. Lines are terminated by '\n', '\r' or "\r\n",
+ * as in {@link LineReader}. Only applies to uncompressed files.
+ * 
+ * <p>
+ * Line numbers start at 1, as in {@link LineReader#getLastLineIndex()}.
+ * 
+ */
+public class LineIndex {
+
+	/**
+	 * Extension of index files.
+	 */
+	public static final String EXTENSION = "lidx";
+
+	private static final int MAGIC = 0x4C494458;
+	private static final int VERSION = 2;
+	private static final int SCAN_BUFFER_SIZE = 1024 * 1024;
+
+	private final File file;
+	private final long fileSize;
+	private final long lastModified;
+	private final int interval;
+	private final int numLines;
+
+	/**
+	 * Offset of lines 1, K+1, 2K+1...
+	 */
+	private final long[] offsets;
+
+	private LineIndex(File file, long fileSize, long lastModified, int interval, int numLines, long[] offsets) {
+		this.file = file;
+		this.fileSize = fileSize;
+		this.lastModified = lastModified;
+		this.interval = interval;
+		this.numLines = numLines;
+		this.offsets = offsets;
+	}
+
+	/**
+	 * Builds an index for the given file.
+	 * 
+	 * @param file
+	 * @param interval
+	 *            the offset of every 'interval' lines is recorded
+	 * @return
+	 */
+	public static LineIndex build(File file, int interval) {
+		Preconditions.checkArgument(interval > 0, "Interval must be positive: " + interval);
+
+		long lastModified = file.lastModified();
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+
+			long[] offsets = new long[16];
+			int numOffsets = 1;
+			offsets[0] = 0;
+
+			int numLines = 0;
+			long position = 0;
+			byte lastByte = '\n';
+
+			ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+			byte[] bytes = buffer.array();
+
+			int read;
+			while ((read = channel.read(buffer)) != -1) {
+				for (int i = 0; i < read; i++) {
+					byte current = bytes[i];
+					if (current != '\n' && current != '\r') {
+						lastByte = current;
+						continue;
+					}
+
+					if (current == '\n' && lastByte == '\r') {
+						// Second byte of "\r\n", the line was counted at '\r'
+						if (offsets[numOffsets - 1] == position + i) {
+							offsets[numOffsets - 1]++;
+						}
+					} else {
+						numLines++;
+						if (numLines % interval == 0) {
+							if (numOffsets == offsets.length) {
+								offsets = Arrays.copyOf(offsets, 2 * numOffsets);
+							}
+							offsets[numOffsets++] = position + i + 1;
+						}
+					}
+
+					lastByte = current;
+				}
+
+				position += read;
+				buffer.clear();
+			}
+
+			// Last line without terminator
+			if (lastByte != '\n' && lastByte != '\r') {
+				numLines++;
+			}
+
+			// Offset recorded after the last terminator does not start a line
+			if (numOffsets > 1 && offsets[numOffsets - 1] >= position) {
+				numOffsets--;
+			}
+
+			return new LineIndex(file, fileSize, lastModified, interval, numLines, Arrays.copyOf(offsets,
+					numOffsets));
+		} catch (IOException e) {
+			throw new RuntimeException("Could not build line index for file '" + file + "'", e);
+		}
+	}
+
+	/**
+	 * Returns the index persisted next to the file, if it is up-to-date.
+	 * Otherwise, builds a new index and persists it.
+	 * 
+	 * @param file
+	 * @param interval
+	 *            interval used if a new index is built
+	 * @return
+	 */
+	public static LineIndex getIndex(File file, int interval) {
+		File indexFile = getIndexFile(file);
+
+		if (indexFile.isFile()) {
+			LineIndex index = read(indexFile, file);
+			if (index != null) {
+				return index;
+			}
+		}
+
+		LineIndex index = build(file, interval);
+		index.write(indexFile);
+		return index;
+	}
+
+	/**
+	 * 
+	 * @param file
+	 * @return the file where the index of the given file is persisted
+	 */
+	public static File getIndexFile(File file) {
+		return new File(file.getPath() + "." + EXTENSION);
+	}
+
+	/**
+	 * Writes the index to the given file.
+	 * 
+	 * @param indexFile
+	 */
+	public void write(File indexFile) {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(fileSize);
+			out.writeLong(lastModified);
+			out.writeInt(interval);
+			out.writeInt(numLines);
+			out.writeInt(offsets.length);
+			for (long offset : offsets) {
+				out.writeLong(offset);
+			}
+		} catch (IOException e) {
+			Log.warn("Could not write line index '" + indexFile + "'", e);
+		}
+	}
+
+	/**
+	 * Reads an index written with {@link #write(File)}.
+	 * 
+	 * @param indexFile
+	 * @param file
+	 *            the indexed file
+	 * @return the index, or null if it is invalid or the file changed after it
+	 *         was built
+	 */
+	public static LineIndex read(File indexFile, File file) {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return null;
+			}
+
+			long fileSize = in.readLong();
+			long lastModified = in.readLong();
+			if (fileSize != file.length() || lastModified != file.lastModified()) {
+				return null;
+			}
+
+			int interval = in.readInt();
+			int numLines = in.readInt();
+			long[] offsets = new long[in.readInt()];
+			for (int i = 0; i < offsets.length; i++) {
+				offsets[i] = in.readLong();
+			}
+
+			return new LineIndex(file, fileSize, lastModified, interval, numLines, offsets);
+		} catch (IOException e) {
+			Log.lib("Could not read line index '" + indexFile + "': " + e.getMessage());
+			return null;
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * 
+	 * @return the size of the file when the index was built
+	 */
+	public long getFileSize() {
+		return fileSize;
+	}
+
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * 
+	 * @return the number of lines in the file
+	 */
+	public int getNumLines() {
+		return numLines;
+	}
+
+	/**
+	 * 
+	 * @return the number of indexed lines
+	 */
+	int getNumBlocks() {
+		return offsets.length;
+	}
+
+	/**
+	 * 
+	 * @param block
+	 * @return the offset of line (block * interval + 1)
+	 */
+	long getBlockOffset(int block) {
+		return offsets[block];
+	}
+
+	/**
+	 * A stream over the lines of the file, which splits at indexed lines and
+	 * keeps the line numbers.
+	 * 
+	 * @param parallel
+	 * @return
+	 */
+	public Stream<NumberedLine> streamNumbered(boolean parallel) {
+		return StreamSupport.stream(LineSpliterator.numbered(this), parallel);
+	}
+
+	/**
+	 * Opens a LineReader whose first line is the given line.
+	 * {@link LineReader#getLastLineIndex()} reports line numbers of the whole
+	 * file.
+	 * 
+	 * @param line
+	 *            the first line to read (starts at 1)
+	 * @return
+	 */
+	public LineReader openAt(int line) {
+		Preconditions.checkArgument(line >= 1 && line <= numLines + 1, "Line " + line + " is outside of file '"
+				+ file + "' (" + numLines + " lines)");
+
+		// Past the last line, return an empty reader
+		if (line > numLines) {
+			return LineReader.createLineReader("", file.getAbsolutePath());
+		}
+
+		int block = (line - 1) / interval;
+
+		try {
+			FileInputStream stream = new FileInputStream(file);
+			try {
+				stream.getChannel().position(offsets[block]);
+			} catch (IOException e) {
+				stream.close();
+				throw e;
+			}
+
+			LineReader reader = LineReader.createLineReader(stream, file.getAbsolutePath(), block * interval);
+
+			// Skip lines until the requested line
+			for (int i = block * interval + 1; i < line; i++) {
+				reader.nextLine();
+			}
+
+			return reader;
+		} catch (IOException e) {
+			throw new RuntimeException("Could not open file '" + file + "' at line " + line, e);
+		}
+	}
+
+	/**
+	 * Reads a range of lines.
+	 * 
+	 * @param firstLine
+	 *            the first line to read (starts at 1)
+	 * @param numLines
+	 *            the maximum number of lines to read
+	 * @return
+	 */
+	public List<String> readLines(int firstLine, int numLines) {
+		List<String> lines = new ArrayList<>(Math.min(numLines, interval));
+
+		try (LineReader reader = openAt(firstLine)) {
+			String line;
+			while (lines.size() < numLines && (line = reader.nextLine()) != null) {
+				lines.add(line);
+			}
+		}
+
+		return lines;
+	}
+}
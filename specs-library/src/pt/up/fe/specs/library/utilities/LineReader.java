@@ -16,26 +16,36 @@ package pt.up.fe.specs.library.utilities;
 import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import pt.up.fe.specs.library.Log;
+import pt.up.fe.specs.library.io.CompressionUtils;
 
 /**
  * Reads lines from a File, one by one.
  * 
+ * <p>
+ * For scanning large files without creating a String per line, see
+ * {@link ByteLineScanner}. To read the next lines in a background thread, see
+ * {@link PrefetchingLineReader}. To follow a file that keeps growing, see
+ * {@link FollowingLineReader}.
+ * 
  * @author Joao Bispo
  */
 public class LineReader implements Iterable<String>, Closeable {
@@ -55,16 +65,34 @@ public class LineReader implements Iterable<String>, Closeable {
 	 */
 	public static final String DEFAULT_CHAR_SET = "UTF-8";
 
+	/**
+	 * Interval of the index used to split numbered streams.
+	 */
+	private static final int STREAM_INDEX_INTERVAL = 1024;
+
 	/**
 	 * Private constructor for static creator method.
 	 * 
 	 * @param reader
 	 */
 	private LineReader(BufferedReader reader, String filename) {
+		this(reader, filename, 0);
+	}
+
+	/**
+	 * Private constructor for readers that do not start at the beginning of
+	 * the file.
+	 * 
+	 * @param reader
+	 * @param filename
+	 * @param lineIndex
+	 *            the index of the line before the first line of the reader
+	 */
+	private LineReader(BufferedReader reader, String filename, int lineIndex) {
 		this.reader = reader;
 		this.name = Optional.ofNullable(filename);
 
-		this.currentLineIndex = 0;
+		this.currentLineIndex = lineIndex;
 		fileEnded = false;
 
 		this.nextLine = nextLineHelper();
@@ -78,6 +106,10 @@ public class LineReader implements Iterable<String>, Closeable {
 	 * created, returns null.
 	 * 
 	 * <p>
+	 * Compressed files are transparently decompressed (see
+	 * {@link CompressionUtils}).
+	 * 
+	 * <p>
 	 * Creating a LineReader involves operations which can lead to failure in
 	 * creation of the object. That is why a public static method is used
 	 * instead of a constructor.
@@ -93,7 +125,7 @@ public class LineReader implements Iterable<String>, Closeable {
 		// FileInputStream stream = null;
 		try {
 			// try (FileInputStream stream = new FileInputStream(file)) {
-			FileInputStream stream = new FileInputStream(file);
+			InputStream stream = CompressionUtils.openInputStream(file);
 			// return createLineReader(stream, file.getName());
 			return createLineReader(stream, file.getAbsolutePath());
 		} catch (IOException e) {
@@ -164,6 +196,22 @@ public class LineReader implements Iterable<String>, Closeable {
 		return null;
 	}
 
+	/**
+	 * Builds a LineReader from an InputStream which does not start at the
+	 * beginning of the file.
+	 * 
+	 * @param inputStream
+	 * @param name
+	 * @param lineIndex
+	 *            the number of lines that precede the stream
+	 * @return
+	 */
+	static LineReader createLineReader(InputStream inputStream, String name, int lineIndex) {
+		BufferedReader newReader = new BufferedReader(new InputStreamReader(inputStream,
+				Charset.forName(DEFAULT_CHAR_SET)));
+		return new LineReader(newReader, name, lineIndex);
+	}
+
 	public int getLastLineIndex() {
 		return currentLineIndex;
 	}
@@ -289,7 +337,77 @@ public class LineReader implements Iterable<String>, Closeable {
 		}
 	}
 
+	/**
+	 * A sequential stream over the remaining lines. To process the lines of a
+	 * file in parallel, use {@link #stream(File, boolean)}.
+	 * 
+	 * @return
+	 */
 	public Stream<String> stream() {
 		return StreamSupport.stream(spliterator(), false);
 	}
+
+	/**
+	 * Lines are numbered as they are read, since parallel streams read lines
+	 * ahead of processing them.
+	 * 
+	 * @return a spliterator over the remaining lines, with their line numbers
+	 */
+	private Spliterator<NumberedLine> numberedSpliterator() {
+		return new Spliterators.AbstractSpliterator<NumberedLine>(Long.MAX_VALUE,
+				Spliterator.ORDERED | Spliterator.NONNULL) {
+
+			@Override
+			public boolean tryAdvance(Consumer<? super NumberedLine> action) {
+				String line = nextLine();
+				if (line == null) {
+					return false;
+				}
+
+				action.accept(new NumberedLine(getLastLineIndex(), line));
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * A stream over the lines of the given file.
+	 * 
+	 * <p>
+	 * Uncompressed files are memory-mapped, and can be split in ranges of lines
+	 * for parallel processing. Encounter order is the order of the lines in
+	 * the file. Compressed files are always read sequentially.
+	 * 
+	 * @param file
+	 * @param parallel
+	 * @return
+	 */
+	public static Stream<String> stream(File file, boolean parallel) {
+		if (CompressionUtils.isCompressed(file)) {
+			LineReader reader = createLineReader(file);
+			return reader.stream().onClose(reader::close);
+		}
+
+		return StreamSupport.stream(LineSpliterator.lines(file), parallel);
+	}
+
+	/**
+	 * A stream over the lines of the given file, together with their line
+	 * numbers. The file is indexed first (see {@link LineIndex}), so that
+	 * ranges of lines know their line numbers when processed in parallel.
+	 * Compressed files are read sequentially, and their lines can still be
+	 * processed in parallel.
+	 * 
+	 * @param file
+	 * @param parallel
+	 * @return
+	 */
+	public static Stream<NumberedLine> streamNumbered(File file, boolean parallel) {
+		if (CompressionUtils.isCompressed(file)) {
+			LineReader reader = createLineReader(file);
+			return StreamSupport.stream(reader.numberedSpliterator(), parallel).onClose(reader::close);
+		}
+
+		return LineIndex.build(file, STREAM_INDEX_INTERVAL).streamNumbered(parallel);
+	}
 }
@@ -0,0 +1,436 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+import pt.up.fe.specs.library.io.CompressionUtils;
+import pt.up.fe.specs.library.io.MappedFile;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Finds the lines of a file that contain any of a set of literals, searching
+ * the bytes of the file without decoding them.
+ * 
+ * <p>
+ * Literals are encoded as UTF-8, and searched with a multi-pattern variant of
+ * Boyer-Moore-Horspool, in a single pass over the memory-mapped file. Only the
+ * matching lines are decoded. Lines are terminated by '\n', '\r' or "\r\n",
+ * as in {@link LineReader}.
+ * 
+ * <p>
+ * Compressed files (see {@link CompressionUtils}) are decompressed and
+ * searched line by line.
+ * 
+ */
+public class LineSearcher {
+
+	private static final int CHUNK_SIZE = 1024 * 1024;
+
+	private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+	private static final long CARRIAGE_RETURNS = 0x0D0D0D0D0D0D0D0DL;
+	private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+	private final byte[][] patterns;
+
+	/**
+	 * Length of the shortest pattern. The search compares windows of this
+	 * length.
+	 */
+	private final int windowLength;
+
+	/**
+	 * Shift of the window, for each value of its last byte.
+	 */
+	private final int[] shifts;
+
+	/**
+	 * Indexes of the patterns that have each value as the last byte of the
+	 * window.
+	 */
+	private final int[][] candidates;
+
+	/**
+	 * 
+	 * @param literals
+	 *            the strings to search, which cannot be empty or contain line
+	 *            terminators
+	 */
+	public LineSearcher(Collection<String> literals) {
+		Preconditions.checkArgument(!literals.isEmpty(), "Expected at least one literal");
+
+		this.patterns = new byte[literals.size()][];
+		int i = 0;
+		for (String literal : literals) {
+			Preconditions.checkArgument(!literal.isEmpty(), "Literals cannot be empty");
+			Preconditions.checkArgument(literal.indexOf('\n') == -1 && literal.indexOf('\r') == -1,
+					"Literals cannot contain line terminators: " + literal);
+
+			patterns[i++] = literal.getBytes(StandardCharsets.UTF_8);
+		}
+
+		this.windowLength = Arrays.stream(patterns).mapToInt(pattern -> pattern.length).min().getAsInt();
+		this.shifts = buildShifts(patterns, windowLength);
+		this.candidates = buildCandidates(patterns, windowLength);
+	}
+
+	public LineSearcher(String... literals) {
+		this(Arrays.asList(literals));
+	}
+
+	private static int[] buildShifts(byte[][] patterns, int windowLength) {
+		int[] shifts = new int[256];
+		Arrays.fill(shifts, windowLength);
+
+		for (byte[] pattern : patterns) {
+			for (int i = 0; i < windowLength - 1; i++) {
+				int value = pattern[i] & 0xFF;
+				shifts[value] = Math.min(shifts[value], windowLength - 1 - i);
+			}
+		}
+
+		return shifts;
+	}
+
+	private static int[][] buildCandidates(byte[][] patterns, int windowLength) {
+		int[][] candidates = new int[256][];
+
+		for (int i = 0; i < patterns.length; i++) {
+			int value = patterns[i][windowLength - 1] & 0xFF;
+			int[] current = candidates[value];
+
+			if (current == null) {
+				candidates[value] = new int[] { i };
+			} else {
+				current = Arrays.copyOf(current, current.length + 1);
+				current[current.length - 1] = i;
+				candidates[value] = current;
+			}
+		}
+
+		return candidates;
+	}
+
+	/**
+	 * 
+	 * @param file
+	 * @return the lines that contain any of the literals, with their line
+	 *         numbers
+	 */
+	public List<NumberedLine> search(File file) {
+		List<NumberedLine> lines = new ArrayList<>();
+		search(file, lines::add);
+		return lines;
+	}
+
+	/**
+	 * 
+	 * @param file
+	 * @param consumer
+	 *            receives the lines that contain any of the literals
+	 * @return the number of matching lines
+	 */
+	public long search(File file, Consumer<NumberedLine> consumer) {
+		if (CompressionUtils.isCompressed(file)) {
+			return searchLines(file, consumer);
+		}
+
+		MappedFile mappedFile;
+		try {
+			mappedFile = MappedFile.map(file);
+		} catch (IOException e) {
+			throw new RuntimeException("Could not map file '" + file + "'", e);
+		}
+
+		return new ChunkSearch(mappedFile, consumer).run();
+	}
+
+	/**
+	 * 
+	 * @param line
+	 * @return true if the line contains any of the literals
+	 */
+	public boolean matches(ByteLine line) {
+		return find(line.getBuffer(), line.getOffset(), line.getOffset() + line.length()) != -1;
+	}
+
+	private long searchLines(File file, Consumer<NumberedLine> consumer) {
+		long[] numMatches = { 0 };
+
+		ByteLineScanner.scan(file, line -> {
+			if (matches(line)) {
+				consumer.accept(new NumberedLine((int) line.getLineIndex(), line.toString()));
+				numMatches[0]++;
+			}
+		});
+
+		return numMatches[0];
+	}
+
+	/**
+	 * 
+	 * @param text
+	 * @param from
+	 * @param to
+	 * @return the position of the first occurrence of any pattern in the given
+	 *         range, or -1 if there is none
+	 */
+	int find(byte[] text, int from, int to) {
+		int position = from + windowLength - 1;
+
+		while (position < to) {
+			int value = text[position] & 0xFF;
+
+			int[] patternIndexes = candidates[value];
+			if (patternIndexes != null) {
+				int start = position - windowLength + 1;
+				for (int patternIndex : patternIndexes) {
+					if (matchesAt(text, start, to, patterns[patternIndex])) {
+						return start;
+					}
+				}
+			}
+
+			position += shifts[value];
+		}
+
+		return -1;
+	}
+
+	private static boolean matchesAt(byte[] text, int start, int end, byte[] pattern) {
+		if (start + pattern.length > end) {
+			return false;
+		}
+
+		for (int i = 0; i < pattern.length; i++) {
+			if (text[start + i] != pattern[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static boolean isTerminator(byte value) {
+		return value == '\n' || value == '\r';
+	}
+
+	/**
+	 * 
+	 * @return the position of the first '\n' or '\r' in the range, or 'to' if
+	 *         there is none
+	 */
+	private static int indexOfTerminator(byte[] bytes, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (isTerminator(bytes[i])) {
+				return i;
+			}
+		}
+
+		return to;
+	}
+
+	/**
+	 * 
+	 * @return the position of the last '\n' or '\r' in the range, or -1 if
+	 *         there is none
+	 */
+	private static int indexOfLastTerminator(byte[] bytes, int from, int to) {
+		for (int i = to - 1; i >= from; i--) {
+			if (isTerminator(bytes[i])) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Search over a mapped file, which is copied in chunks that end at line
+	 * boundaries.
+	 */
+	private class ChunkSearch {
+
+		private final MappedFile file;
+		private final Consumer<NumberedLine> consumer;
+
+		private byte[] chunk;
+
+		/**
+		 * View of the chunk, for reading 8 bytes at a time.
+		 */
+		private ByteBuffer words;
+
+		/**
+		 * End of the complete lines in the chunk.
+		 */
+		private int linesEnd;
+
+		/**
+		 * Number of the line that starts at 'countedPosition'.
+		 */
+		private int lineIndex;
+		private int countedPosition;
+		private long numMatches;
+
+		ChunkSearch(MappedFile file, Consumer<NumberedLine> consumer) {
+			this.file = file;
+			this.consumer = consumer;
+			this.chunk = new byte[(int) Math.min(CHUNK_SIZE, Math.max(1, file.size()))];
+			this.words = ByteBuffer.wrap(chunk).order(ByteOrder.LITTLE_ENDIAN);
+			this.lineIndex = 1;
+			this.numMatches = 0;
+		}
+
+		long run() {
+			long position = 0;
+			int carry = 0;
+
+			while (position < file.size()) {
+				int length = (int) Math.min(chunk.length - carry, file.size() - position);
+				file.getBytes(position, chunk, carry, length);
+				position += length;
+
+				int end = carry + length;
+				boolean lastChunk = position == file.size();
+
+				// Only search complete lines, unless this is the last chunk. A
+				// '\r' at the end of the chunk can be the start of "\r\n"
+				int searchEnd = end;
+				if (!lastChunk) {
+					int scanEnd = chunk[end - 1] == '\r' ? end - 1 : end;
+					searchEnd = indexOfLastTerminator(chunk, 0, scanEnd) + 1;
+				}
+				if (searchEnd == 0) {
+					// A line longer than the chunk
+					chunk = Arrays.copyOf(chunk, chunk.length * 2);
+					words = ByteBuffer.wrap(chunk).order(ByteOrder.LITTLE_ENDIAN);
+					carry = end;
+					continue;
+				}
+
+				searchChunk(searchEnd);
+
+				carry = end - searchEnd;
+				System.arraycopy(chunk, searchEnd, chunk, 0, carry);
+			}
+
+			return numMatches;
+		}
+
+		private void searchChunk(int end) {
+			linesEnd = end;
+			countedPosition = 0;
+
+			int from = 0;
+			int match;
+			while ((match = find(chunk, from, end)) != -1) {
+				int lineStart = countLines(match);
+				int lineEnd = indexOfTerminator(chunk, match, end);
+
+				consumer.accept(new NumberedLine(lineIndex, new String(chunk, lineStart, lineEnd - lineStart,
+						StandardCharsets.UTF_8)));
+				numMatches++;
+
+				// Continue after the matching line
+				from = lineEnd + 1;
+				if (lineEnd + 1 < end && chunk[lineEnd] == '\r' && chunk[lineEnd + 1] == '\n') {
+					from++;
+				}
+				countedPosition = from;
+				lineIndex++;
+			}
+
+			// Remaining lines of the chunk
+			countLines(end);
+		}
+
+		/**
+		 * Counts the lines between the counted position and the given
+		 * position.
+		 * 
+		 * @return the start of the line that contains the given position
+		 */
+		private int countLines(int position) {
+			lineIndex += countTerminators(countedPosition, position);
+
+			int lineStart = indexOfLastTerminator(chunk, countedPosition, position) + 1;
+			if (lineStart == 0) {
+				lineStart = countedPosition;
+			}
+
+			countedPosition = lineStart;
+			return lineStart;
+		}
+
+		/**
+		 * Counts line terminators 8 bytes at a time. A byte of (word ^
+		 * NEWLINES) is zero for each '\n', and the expression in zeroBytes
+		 * sets the high bit of exactly those bytes. Each '\r' is then checked
+		 * individually, since it is only a terminator when it is not followed
+		 * by '\n'.
+		 */
+		private int countTerminators(int from, int to) {
+			int count = 0;
+
+			int i = from;
+			for (; i + 8 <= to; i += 8) {
+				long word = words.getLong(i);
+				count += Long.bitCount(zeroBytes(word ^ NEWLINES));
+
+				long carriageReturns = zeroBytes(word ^ CARRIAGE_RETURNS);
+				while (carriageReturns != 0) {
+					// Little-endian, the lowest byte is the first
+					int position = i + (Long.numberOfTrailingZeros(carriageReturns) >>> 3);
+					if (isLoneCarriageReturn(position)) {
+						count++;
+					}
+					carriageReturns &= carriageReturns - 1;
+				}
+			}
+
+			for (; i < to; i++) {
+				if (chunk[i] == '\n' || (chunk[i] == '\r' && isLoneCarriageReturn(i))) {
+					count++;
+				}
+			}
+
+			return count;
+		}
+
+		private boolean isLoneCarriageReturn(int position) {
+			return position + 1 >= linesEnd || chunk[position + 1] != '\n';
+		}
+	}
+
+	/**
+	 * 
+	 * @param word
+	 * @return a word with the high bit set in each byte that is zero in the
+	 *         given word
+	 */
+	private static long zeroBytes(long word) {
+		return ~(((word & LOW_BITS) + LOW_BITS) | word | LOW_BITS);
+	}
+}
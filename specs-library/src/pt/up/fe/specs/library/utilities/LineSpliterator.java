@@ -0,0 +1,252 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import pt.up.fe.specs.library.io.MappedFile;
+
+/**
+ * Spliterator over the lines of a memory-mapped file, which splits the file in
+ * byte ranges that start at line boundaries.
+ * 
+ * <p>
+ * Without an index, ranges are split at the first line after their middle
+ * byte, and line numbers are not known. With a {@link LineIndex}, ranges are
+ * split at indexed lines, so each range knows the number of its first line.
+ * 
+ * <p>
+ * Lines are terminated by '\n', '\r' or "\r\n", as in {@link LineReader},
+ * and decoded as UTF-8.
+ * 
+ * @param <T>
+ */
+class LineSpliterator<T> implements Spliterator<T> {
+
+	/**
+	 * Ranges smaller than this are not split.
+	 */
+	private static final long MIN_SPLIT_SIZE = 64 * 1024;
+
+	private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Creates the elements of the spliterator.
+	 */
+	interface LineMapper<T> {
+		T map(ByteLine line, int lineIndex);
+	}
+
+	private final MappedFile file;
+	private final LineIndex index;
+	private final LineMapper<T> mapper;
+
+	private long start;
+	private final long end;
+
+	/**
+	 * Range of index blocks, if there is an index.
+	 */
+	private int blockStart;
+	private final int blockEnd;
+
+	private ByteLineScanner scanner;
+
+	private LineSpliterator(MappedFile file, LineIndex index, LineMapper<T> mapper, long start, long end,
+			int blockStart, int blockEnd) {
+		this.file = file;
+		this.index = index;
+		this.mapper = mapper;
+		this.start = start;
+		this.end = end;
+		this.blockStart = blockStart;
+		this.blockEnd = blockEnd;
+		this.scanner = null;
+	}
+
+	/**
+	 * 
+	 * @param file
+	 * @return a spliterator over the lines of the file, without line numbers
+	 */
+	static LineSpliterator<String> lines(File file) {
+		MappedFile mappedFile = map(file);
+		return new LineSpliterator<>(mappedFile, null, (line, lineIndex) -> line.toString(), 0, mappedFile.size(),
+				-1, -1);
+	}
+
+	/**
+	 * 
+	 * @param index
+	 * @return a spliterator over the lines of the indexed file, with line
+	 *         numbers
+	 */
+	static LineSpliterator<NumberedLine> numbered(LineIndex index) {
+		MappedFile mappedFile = map(index.getFile());
+		if (mappedFile.size() != index.getFileSize()) {
+			throw new RuntimeException("File '" + index.getFile() + "' changed after being indexed");
+		}
+
+		return new LineSpliterator<>(mappedFile, index,
+				(line, lineIndex) -> new NumberedLine(lineIndex, line.toString()), 0, mappedFile.size(), 0,
+				index.getNumBlocks());
+	}
+
+	private static MappedFile map(File file) {
+		try {
+			return MappedFile.map(file);
+		} catch (IOException e) {
+			throw new RuntimeException("Could not map file '" + file + "'", e);
+		}
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super T> action) {
+		if (scanner == null) {
+			scanner = new ByteLineScanner(new RangeInputStream(file, start, end), SCAN_BUFFER_SIZE);
+		}
+
+		ByteLine line = scanner.nextLine();
+		if (line == null) {
+			return false;
+		}
+
+		action.accept(mapper.map(line, getFirstLineIndex() + (int) line.getLineIndex() - 1));
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(Consumer<? super T> action) {
+		while (tryAdvance(action)) {
+			// Advance
+		}
+	}
+
+	private int getFirstLineIndex() {
+		return index == null ? 0 : blockStart * index.getInterval() + 1;
+	}
+
+	@Override
+	public Spliterator<T> trySplit() {
+		// Cannot split after starting to read
+		if (scanner != null || end - start < MIN_SPLIT_SIZE) {
+			return null;
+		}
+
+		if (index != null) {
+			return splitAtBlock();
+		}
+
+		// First line that starts after the middle
+		long middle = start + (end - start) / 2;
+		while (middle < end && !isLineStart(middle)) {
+			middle++;
+		}
+
+		if (middle >= end) {
+			return null;
+		}
+
+		LineSpliterator<T> prefix = new LineSpliterator<>(file, null, mapper, start, middle, -1, -1);
+		start = middle;
+		return prefix;
+	}
+
+	/**
+	 * 
+	 * @param position
+	 * @return true if a line starts at the given position, which must be
+	 *         after the start of the file
+	 */
+	private boolean isLineStart(long position) {
+		byte previous = file.get(position - 1);
+		if (previous == '\n') {
+			return true;
+		}
+
+		// Do not split "\r\n"
+		return previous == '\r' && file.get(position) != '\n';
+	}
+
+	private Spliterator<T> splitAtBlock() {
+		if (blockEnd - blockStart < 2) {
+			return null;
+		}
+
+		int middleBlock = blockStart + (blockEnd - blockStart) / 2;
+		long middle = index.getBlockOffset(middleBlock);
+
+		LineSpliterator<T> prefix = new LineSpliterator<>(file, index, mapper, start, middle, blockStart,
+				middleBlock);
+		start = middle;
+		blockStart = middleBlock;
+		return prefix;
+	}
+
+	/**
+	 * The number of bytes in the range, which is an upper bound of the number
+	 * of lines.
+	 */
+	@Override
+	public long estimateSize() {
+		return end - start;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL | IMMUTABLE;
+	}
+
+	/**
+	 * InputStream over a range of a mapped file.
+	 */
+	private static class RangeInputStream extends InputStream {
+
+		private final MappedFile file;
+		private final long end;
+		private long position;
+
+		RangeInputStream(MappedFile file, long start, long end) {
+			this.file = file;
+			this.position = start;
+			this.end = end;
+		}
+
+		@Override
+		public int read() {
+			if (position >= end) {
+				return -1;
+			}
+
+			return file.get(position++) & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (position >= end) {
+				return -1;
+			}
+
+			int read = (int) Math.min(len, end - position);
+			file.getBytes(position, b, off, read);
+			position += read;
+
+			return read;
+		}
+	}
+}
@@ -0,0 +1,272 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.utilities;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import pt.up.fe.specs.library.io.AsyncIoUtils;
+
+/**
+ * Reads the lines of several files, one after the other, as a single
+ * sequence of lines (e.g., the files returned by IoUtils.getFilesRecursive).
+ * 
+ * <p>
+ * While the lines of a file are read, the next file is opened in the
+ * background, and its first lines are buffered, so there is no wait at file
+ * boundaries.
+ * 
+ * <p>
+ * If a file cannot be opened, reading stops at that file: the
+ * RuntimeException is thrown by the call that reached the file, and again by
+ * every later call.
+ * 
+ */
+public class MultiFileLineReader implements Iterable<String>, Closeable {
+
+	private final List<File> files;
+	private final Executor executor;
+
+	/**
+	 * Index of the file being read.
+	 */
+	private int fileIndex;
+	private LineReader current;
+	private CompletableFuture<LineReader> next;
+
+	/**
+	 * The error that stopped the reader, if a file could not be opened.
+	 */
+	private RuntimeException failure;
+
+	private File lastFile;
+	private int lastLineIndex;
+	private long totalLineIndex;
+
+	private MultiFileLineReader(List<File> files, Executor executor) {
+		this.files = files;
+		this.executor = executor;
+
+		this.fileIndex = -1;
+		this.current = null;
+		this.next = null;
+		this.failure = null;
+
+		this.lastFile = null;
+		this.lastLineIndex = 0;
+		this.totalLineIndex = 0;
+
+		nextFile();
+	}
+
+	/**
+	 * Opens the next files in the executor of {@link AsyncIoUtils}.
+	 * 
+	 * @param files
+	 *            the files to read, in order
+	 * @return
+	 */
+	public static MultiFileLineReader open(Collection<File> files) {
+		return open(files, AsyncIoUtils.getDefaultExecutor());
+	}
+
+	/**
+	 * 
+	 * @param files
+	 *            the files to read, in order
+	 * @param executor
+	 *            where the next files are opened
+	 * @return
+	 */
+	public static MultiFileLineReader open(Collection<File> files, Executor executor) {
+		return new MultiFileLineReader(Collections.unmodifiableList(new ArrayList<>(files)), executor);
+	}
+
+	/**
+	 * Closes the current file, and starts reading the next one.
+	 * 
+	 * @return false if there are no more files
+	 */
+	private boolean nextFile() {
+		if (current != null) {
+			current.close();
+			current = null;
+		}
+
+		fileIndex++;
+		if (fileIndex >= files.size()) {
+			return false;
+		}
+
+		File file = files.get(fileIndex);
+		try {
+			current = next != null ? join(next) : LineReader.createLineReader(file);
+		} catch (RuntimeException e) {
+			fail(new RuntimeException("Could not open file '" + file + "'", e));
+		}
+
+		// Start opening the file after the current one
+		int nextIndex = fileIndex + 1;
+		if (nextIndex < files.size()) {
+			File nextFile = files.get(nextIndex);
+			next = CompletableFuture.supplyAsync(() -> LineReader.createLineReader(nextFile), executor);
+		} else {
+			next = null;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Stops reading, the given exception is thrown by this and all later
+	 * calls.
+	 */
+	private void fail(RuntimeException exception) {
+		failure = exception;
+
+		// Not read anymore
+		closeNext();
+		fileIndex = files.size();
+
+		throw exception;
+	}
+
+	private static LineReader join(CompletableFuture<LineReader> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the next line, or null if the end of the last file has been
+	 *         reached.
+	 */
+	public String nextLine() {
+		if (!hasNextLine()) {
+			return null;
+		}
+
+		String line = current.nextLine();
+
+		lastFile = files.get(fileIndex);
+		lastLineIndex = current.getLastLineIndex();
+		totalLineIndex++;
+
+		return line;
+	}
+
+	public boolean hasNextLine() {
+		if (failure != null) {
+			throw failure;
+		}
+
+		while (current != null && !current.hasNextLine()) {
+			nextFile();
+		}
+
+		return current != null;
+	}
+
+	/**
+	 * 
+	 * @return the file of the last line returned, or null if no line was
+	 *         returned yet
+	 */
+	public File getCurrentFile() {
+		return lastFile;
+	}
+
+	/**
+	 * 
+	 * @return the index of the last line returned, inside its file
+	 */
+	public int getLastLineIndex() {
+		return lastLineIndex;
+	}
+
+	/**
+	 * 
+	 * @return the number of lines returned so far, from all files
+	 */
+	public long getTotalLineIndex() {
+		return totalLineIndex;
+	}
+
+	public List<File> getFiles() {
+		return files;
+	}
+
+	@Override
+	public Iterator<String> iterator() {
+		return new Iterator<String>() {
+
+			@Override
+			public boolean hasNext() {
+				return hasNextLine();
+			}
+
+			@Override
+			public String next() {
+				String line = nextLine();
+				if (line == null) {
+					throw new NoSuchElementException();
+				}
+
+				return line;
+			}
+		};
+	}
+
+	public Stream<String> stream() {
+		return StreamSupport.stream(spliterator(), false).onClose(this::close);
+	}
+
+	@Override
+	public void close() {
+		if (current != null) {
+			current.close();
+			current = null;
+		}
+
+		closeNext();
+		fileIndex = files.size();
+	}
+
+	/**
+	 * Closes the next file when it finishes opening.
+	 */
+	private void closeNext() {
+		if (next != null) {
+			next.thenAccept(LineReader::close);
+			next = null;
+		}
+	}
+}
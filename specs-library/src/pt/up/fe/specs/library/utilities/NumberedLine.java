@@ -0,0 +1,64 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.utilities;
+
+/**
+ * A line of a file, together with its line number.
+ * 
+ */
+public class NumberedLine {
+
+	private final int lineIndex;
+	private final String line;
+
+	public NumberedLine(int lineIndex, String line) {
+		this.lineIndex = lineIndex;
+		this.line = line;
+	}
+
+	/**
+	 * 
+	 * @return the number of the line (starts at 1)
+	 */
+	public int getLineIndex() {
+		return lineIndex;
+	}
+
+	public String getLine() {
+		return line;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * lineIndex + line.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof NumberedLine)) {
+			return false;
+		}
+
+		NumberedLine other = (NumberedLine) obj;
+		return lineIndex == other.lineIndex && line.equals(other.line);
+	}
+
+	@Override
+	public String toString() {
+		return lineIndex + ": " + line;
+	}
+}
@@ -0,0 +1,328 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.utilities;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import pt.up.fe.specs.library.Log;
+import pt.up.fe.specs.library.io.CompressionUtils;
+
+/**
+ * Reads lines from a File, one by one, while a background thread reads and
+ * decodes the next lines.
+ * 
+ * <p>
+ * The background thread fills a bounded queue of line batches, so reading
+ * from disk and decoding overlaps with the processing of the lines by the
+ * consumer. When the queue is full the background thread waits, so at most
+ * (numBatches * batchSize) lines are kept in memory.
+ * 
+ * <p>
+ * Errors in the background thread are thrown as RuntimeExceptions by
+ * {@link #nextLine()}, after the lines read before the error. Closing the
+ * reader stops the background thread.
+ * 
+ */
+public class PrefetchingLineReader implements Iterable<String>, Closeable {
+
+	private static final int DEFAULT_BATCH_SIZE = 4096;
+	private static final int DEFAULT_NUM_BATCHES = 3;
+
+	/**
+	 * How often a background thread waiting for space in the queue checks if
+	 * the reader was closed, in milliseconds.
+	 */
+	private static final long PUT_TIMEOUT_MS = 100;
+
+	/**
+	 * Marks the end of the stream.
+	 */
+	private static final Batch END = new Batch(Collections.emptyList(), null);
+
+	private final Optional<String> name;
+	private final BufferedReader reader;
+	private final BlockingQueue<Batch> queue;
+	private final Thread prefetcher;
+
+	private List<String> currentBatch;
+	private int batchPosition;
+	private boolean ended;
+	private int currentLineIndex;
+
+	private volatile boolean closed;
+
+	/**
+	 * Lines read by the background thread, or the error that stopped it.
+	 */
+	private static class Batch {
+		private final List<String> lines;
+		private final Exception error;
+
+		Batch(List<String> lines, Exception error) {
+			this.lines = lines;
+			this.error = error;
+		}
+	}
+
+	private PrefetchingLineReader(BufferedReader reader, String name, int batchSize, int numBatches) {
+		this.name = Optional.ofNullable(name);
+		this.reader = reader;
+		this.queue = new ArrayBlockingQueue<>(Math.max(1, numBatches));
+
+		this.currentBatch = Collections.emptyList();
+		this.batchPosition = 0;
+		this.ended = false;
+		this.currentLineIndex = 0;
+		this.closed = false;
+
+		int size = Math.max(1, batchSize);
+		this.prefetcher = new Thread(() -> prefetch(size), "LineReader prefetch"
+				+ (name == null ? "" : " - " + name));
+		this.prefetcher.setDaemon(true);
+		this.prefetcher.start();
+	}
+
+	/**
+	 * Opens a file with batches of 4096 lines, and up to 3 batches read ahead.
+	 * Compressed files are transparently decompressed (see
+	 * {@link CompressionUtils}).
+	 * 
+	 * @param file
+	 * @return
+	 */
+	public static PrefetchingLineReader open(File file) {
+		return open(file, DEFAULT_BATCH_SIZE, DEFAULT_NUM_BATCHES);
+	}
+
+	/**
+	 * 
+	 * @param file
+	 * @param batchSize
+	 *            the number of lines in each batch
+	 * @param numBatches
+	 *            the maximum number of batches read ahead of the consumer
+	 * @return
+	 */
+	public static PrefetchingLineReader open(File file, int batchSize, int numBatches) {
+		try {
+			return open(CompressionUtils.openInputStream(file), file.getAbsolutePath(), batchSize, numBatches);
+		} catch (IOException e) {
+			throw new RuntimeException("Could not open file '" + file + "'", e);
+		}
+	}
+
+	/**
+	 * 
+	 * @param inputStream
+	 * @param name
+	 * @param batchSize
+	 *            the number of lines in each batch
+	 * @param numBatches
+	 *            the maximum number of batches read ahead of the consumer
+	 * @return
+	 */
+	public static PrefetchingLineReader open(InputStream inputStream, String name, int batchSize,
+			int numBatches) {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream,
+				Charset.forName(LineReader.DEFAULT_CHAR_SET)));
+		return new PrefetchingLineReader(reader, name, batchSize, numBatches);
+	}
+
+	/**
+	 * Runs in the background thread.
+	 */
+	private void prefetch(int batchSize) {
+		try {
+			while (!closed) {
+				List<String> batch = new ArrayList<>(batchSize);
+
+				String line = null;
+				while (batch.size() < batchSize && (line = reader.readLine()) != null) {
+					batch.add(line);
+				}
+
+				if (!batch.isEmpty() && !put(new Batch(batch, null))) {
+					return;
+				}
+
+				if (line == null) {
+					put(END);
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			// Reader was closed, close() already woke up the consumer, this
+			// is in case the interruption did not come from close()
+			queue.offer(END);
+		} catch (Exception e) {
+			putError(e);
+		} finally {
+			closeReader();
+		}
+	}
+
+	/**
+	 * Waits for space in the queue, while the reader is not closed.
+	 * 
+	 * @return false if the reader was closed
+	 * @throws InterruptedException
+	 */
+	private boolean put(Batch batch) throws InterruptedException {
+		while (!closed) {
+			if (queue.offer(batch, PUT_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private void putError(Exception e) {
+		try {
+			put(new Batch(Collections.emptyList(), e));
+		} catch (InterruptedException e1) {
+			queue.offer(END);
+		}
+	}
+
+	private void closeReader() {
+		try {
+			reader.close();
+		} catch (IOException e) {
+			Log.warn("Could not close PrefetchingLineReader.", e);
+		}
+	}
+
+	public int getLastLineIndex() {
+		return currentLineIndex;
+	}
+
+	public Optional<String> getFilename() {
+		return name;
+	}
+
+	/**
+	 * @return the next line in the file, or null if the end of the stream has
+	 *         been reached.
+	 */
+	public String nextLine() {
+		if (!hasNextLine()) {
+			return null;
+		}
+
+		currentLineIndex++;
+		return currentBatch.get(batchPosition++);
+	}
+
+	public boolean hasNextLine() {
+		// Lines of the current batch are also discarded
+		if (closed) {
+			return false;
+		}
+
+		while (batchPosition == currentBatch.size()) {
+			if (ended || closed) {
+				return false;
+			}
+
+			Batch batch = takeBatch();
+
+			if (batch.error != null) {
+				ended = true;
+				throw new RuntimeException("Could not read line " + (currentLineIndex + 1)
+						+ name.map(n -> " of '" + n + "'").orElse(""), batch.error);
+			}
+
+			if (batch == END) {
+				ended = true;
+			}
+
+			currentBatch = batch.lines;
+			batchPosition = 0;
+		}
+
+		return true;
+	}
+
+	private Batch takeBatch() {
+		try {
+			return queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for lines", e);
+		}
+	}
+
+	@Override
+	public Iterator<String> iterator() {
+		return new Iterator<String>() {
+
+			@Override
+			public boolean hasNext() {
+				return hasNextLine();
+			}
+
+			@Override
+			public String next() {
+				String line = nextLine();
+				if (line == null) {
+					throw new NoSuchElementException();
+				}
+
+				return line;
+			}
+		};
+	}
+
+	public Stream<String> stream() {
+		return StreamSupport.stream(spliterator(), false).onClose(this::close);
+	}
+
+	/**
+	 * Stops the background thread. Lines already read ahead are discarded, and
+	 * a thread waiting in {@link #nextLine()} returns null.
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		prefetcher.interrupt();
+
+		// Wake up a consumer waiting for lines. The background thread may
+		// still add a batch, so retry until END is in the queue
+		do {
+			queue.clear();
+		} while (!queue.offer(END));
+	}
+}
@@ -0,0 +1,218 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+import org.w3c.dom.Document;
+
+import pt.up.fe.specs.library.Log;
+import pt.up.fe.specs.library.XmlUtils;
+import pt.up.fe.specs.library.io.CacheUtils;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * In-memory cache of parsed XML files, bounded by the total size of the
+ * files, with least-recently-used eviction.
+ * 
+ * <p>
+ * Files are identified by their canonical path. A cached document is used
+ * while the modification time and the size of the file do not change,
+ * otherwise the file is parsed again. Concurrent misses on the same file parse
+ * it only once.
+ * 
+ * <p>
+ * Since DOM documents are mutable, callers receive a deep copy of the cached
+ * document, which they can modify freely.
+ * 
+ * <p>
+ * Can be installed with {@link XmlUtils#setDocumentCache(XmlDocumentCache)},
+ * so that it is used by XmlUtils.getXmlRoot(File) and its callers.
+ * 
+ */
+public class XmlDocumentCache {
+
+	private final Cache<String, CachedDocument> cache;
+
+	/**
+	 * 
+	 * @param maxBytes
+	 *            maximum total size of the cached files, in bytes. The memory
+	 *            used by a parsed document is usually several times the size
+	 *            of the file
+	 */
+	public XmlDocumentCache(long maxBytes) {
+		Preconditions.checkArgument(maxBytes >= 0, "Maximum number of bytes must not be negative: " + maxBytes);
+
+		this.cache = CacheUtils
+				.newWeightedBuilder(maxBytes,
+						(String path, CachedDocument document) -> (int) Math.min(document.size, Integer.MAX_VALUE))
+				.recordStats()
+				.build();
+	}
+
+	/**
+	 * A parsed document, and the state of the file when it was parsed.
+	 */
+	private static class CachedDocument {
+		private final Document document;
+		private final long lastModified;
+		private final long size;
+
+		CachedDocument(Document document, long lastModified, long size) {
+			this.document = document;
+			this.lastModified = lastModified;
+			this.size = size;
+		}
+
+		boolean isValid(File file) {
+			return file.lastModified() == lastModified && file.length() == size;
+		}
+
+		/**
+		 * Reading a DOM is not guaranteed to be thread-safe (e.g., nodes can be
+		 * expanded lazily), so copies are made one at a time.
+		 */
+		synchronized Document copy() {
+			return (Document) document.cloneNode(true);
+		}
+	}
+
+	/**
+	 * Cached version of {@link XmlUtils#parseXmlRoot(File)}.
+	 * 
+	 * @param file
+	 * @return a copy of the parsed document, or null if the file could not be
+	 *         parsed
+	 */
+	public Document getXmlRoot(File file) {
+		CachedDocument cached = get(file);
+		if (cached == null) {
+			return null;
+		}
+
+		return cached.copy();
+	}
+
+	private CachedDocument get(File file) {
+		String key = getKey(file);
+
+		CachedDocument cached = load(key, file);
+		if (cached == null || cached.isValid(file)) {
+			return cached;
+		}
+
+		// The file changed. Only one of the threads that see it removes the
+		// entry, the others use the document parsed by that thread
+		cache.asMap().remove(key, cached);
+		return load(key, file);
+	}
+
+	private CachedDocument load(String key, File file) {
+		try {
+			return cache.get(key, () -> parse(file));
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			if (!(e.getCause() instanceof ParseException)) {
+				Log.warn("Could not parse XML file '" + file + "'", e);
+			}
+
+			return null;
+		}
+	}
+
+	private static CachedDocument parse(File file) throws ParseException {
+		// Read the state of the file before parsing, so that changes during
+		// the parsing invalidate the entry
+		long lastModified = file.lastModified();
+		long size = file.length();
+
+		Document document = XmlUtils.parseXmlRoot(file);
+		if (document == null) {
+			throw new ParseException(file);
+		}
+
+		return new CachedDocument(document, lastModified, size);
+	}
+
+	private static String getKey(File file) {
+		try {
+			return file.getCanonicalPath();
+		} catch (IOException e) {
+			return file.getAbsolutePath();
+		}
+	}
+
+	/**
+	 * Removes the given file from the cache.
+	 * 
+	 * @param file
+	 */
+	public void invalidate(File file) {
+		cache.invalidate(getKey(file));
+	}
+
+	/**
+	 * Removes all files from the cache.
+	 */
+	public void clear() {
+		cache.invalidateAll();
+	}
+
+	/**
+	 * 
+	 * @return statistics of the cache (hit rate, evictions, load times...)
+	 */
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	/**
+	 * 
+	 * @return the total size of the files currently in the cache, in bytes
+	 */
+	public long getCachedBytes() {
+		long bytes = 0;
+		for (CachedDocument value : cache.asMap().values()) {
+			bytes += value.size;
+		}
+
+		return bytes;
+	}
+
+	@Override
+	public String toString() {
+		CacheStats stats = getStats();
+		return "XmlDocumentCache(files: " + cache.size() + ", hit rate: " + stats.hitRate() + ", evictions: "
+				+ stats.evictionCount() + ")";
+	}
+
+	/**
+	 * Thrown when the file could not be parsed (XmlUtils already logged the
+	 * error), since the cache does not support null values.
+	 */
+	private static class ParseException extends Exception {
+
+		private static final long serialVersionUID = 1L;
+
+		public ParseException(File file) {
+			super("Could not parse XML file '" + file + "'");
+		}
+	}
+}
@@ -0,0 +1,361 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.xml;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import pt.up.fe.specs.library.XmlUtils;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Evaluates queries over an XML file in a single streaming pass, without
+ * building a DOM.
+ * 
+ * <p>
+ * Supports the same queries as the DOM helpers of {@link XmlUtils}:
+ * <ul>
+ * <li>{@link #addAttribute}: an attribute of the first element with the given
+ * tag (as XmlUtils.getAttribute);</li>
+ * <li>{@link #addSectionValue}: the text content of the first element with
+ * the given tag (as XmlUtils.getSectionValue);</li>
+ * <li>{@link #addText}: the text content of the element found by walking a
+ * tag-chain from the root (as XmlUtils.getText).</li>
+ * </ul>
+ * 
+ * <p>
+ * Memory use does not depend on the size of the file, only on the size of
+ * the returned values. Parsing stops as soon as all queries have an answer.
+ * 
+ * <p>
+ * Like the DocumentBuilders of XmlUtils, the parser is not namespace-aware:
+ * tags and attributes are matched by their full name, including the prefix
+ * (e.g., "p:tag").
+ * 
+ * <p>
+ * Queries should be added before running them. Each run keeps its own state,
+ * so the same object can run its queries on several files concurrently.
+ * 
+ */
+public class XmlStreamQuery {
+
+	private static final XMLInputFactory INPUT_FACTORY = newInputFactory();
+
+	private static XMLInputFactory newInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		return factory;
+	}
+
+	/**
+	 * Creates the state of each query for a single run.
+	 */
+	private final Map<String, Supplier<Query>> queries;
+
+	public XmlStreamQuery() {
+		this.queries = new LinkedHashMap<>();
+	}
+
+	/**
+	 * Adds a query for an attribute of the first element with the given tag.
+	 * As in the DOM, a missing attribute has the value "".
+	 * 
+	 * @param key
+	 *            the key of the value in the results
+	 * @param section
+	 * @param attribute
+	 * @return this object
+	 */
+	public XmlStreamQuery addAttribute(String key, String section, String attribute) {
+		return add(key, () -> new AttributeQuery(section, attribute));
+	}
+
+	/**
+	 * Adds a query for the text content of the first element with the given
+	 * tag.
+	 * 
+	 * @param key
+	 *            the key of the value in the results
+	 * @param section
+	 * @return this object
+	 */
+	public XmlStreamQuery addSectionValue(String key, String section) {
+		return add(key, () -> new SectionValueQuery(section));
+	}
+
+	/**
+	 * Adds a query for the text content of the element found by walking the
+	 * tag-chain, starting at the root element. At each level, the first child
+	 * with the given tag is used.
+	 * 
+	 * @param key
+	 *            the key of the value in the results
+	 * @param tagChain
+	 * @return this object
+	 */
+	public XmlStreamQuery addText(String key, String... tagChain) {
+		Preconditions.checkArgument(tagChain.length > 0, "Expected at least one tag");
+		return add(key, () -> new TextQuery(tagChain));
+	}
+
+	private XmlStreamQuery add(String key, Supplier<Query> query) {
+		Preconditions.checkArgument(!queries.containsKey(key), "Duplicated key '" + key + "'");
+		queries.put(key, query);
+		return this;
+	}
+
+	/**
+	 * Evaluates the queries over the given file.
+	 * 
+	 * @param file
+	 * @return the values found, indexed by key. Queries without a value are
+	 *         not in the map
+	 */
+	public Map<String, String> run(File file) {
+		try (InputStream stream = new BufferedInputStream(new FileInputStream(file))) {
+			return run(stream, file.toURI().toString());
+		} catch (IOException e) {
+			throw new RuntimeException("Could not read XML file '" + file + "'", e);
+		}
+	}
+
+	/**
+	 * Evaluates the queries over the given stream. The stream is not closed.
+	 * 
+	 * @param stream
+	 * @param systemId
+	 *            used to resolve relative references, can be null
+	 * @return the values found, indexed by key. Queries without a value are
+	 *         not in the map
+	 */
+	public Map<String, String> run(InputStream stream, String systemId) {
+		Map<String, Query> running = new LinkedHashMap<>();
+		for (Map.Entry<String, Supplier<Query>> entry : queries.entrySet()) {
+			running.put(entry.getKey(), entry.getValue().get());
+		}
+		List<Query> pending = new ArrayList<>(running.values());
+
+		try {
+			XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(systemId, stream);
+			try {
+				evaluate(reader, pending);
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new RuntimeException("Could not parse XML" + (systemId == null ? "" : " '" + systemId + "'"), e);
+		}
+
+		Map<String, String> values = new LinkedHashMap<>();
+		for (Map.Entry<String, Query> entry : running.entrySet()) {
+			String value = entry.getValue().value;
+			if (value != null) {
+				values.put(entry.getKey(), value);
+			}
+		}
+
+		return values;
+	}
+
+	private static void evaluate(XMLStreamReader reader, List<Query> pending) throws XMLStreamException {
+		int depth = 0;
+
+		while (!pending.isEmpty() && reader.hasNext()) {
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				depth++;
+				String tag = getTag(reader);
+				for (Query query : pending) {
+					query.startElement(reader, tag, depth);
+				}
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				for (Query query : pending) {
+					query.endElement(depth);
+				}
+				depth--;
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				for (Query query : pending) {
+					query.characters(reader);
+				}
+				break;
+			default:
+				continue;
+			}
+
+			pending.removeIf(query -> query.done);
+		}
+	}
+
+	/**
+	 * 
+	 * @param reader
+	 * @return the tag of the current element, as returned by
+	 *         Node.getNodeName(). Parsers that are not namespace-aware
+	 *         usually return the full name as the local name
+	 */
+	private static String getTag(XMLStreamReader reader) {
+		String prefix = reader.getPrefix();
+		if (prefix == null || prefix.isEmpty()) {
+			return reader.getLocalName();
+		}
+
+		return prefix + ":" + reader.getLocalName();
+	}
+
+	private static String getAttribute(XMLStreamReader reader, String attribute) {
+		for (int i = 0; i < reader.getAttributeCount(); i++) {
+			String prefix = reader.getAttributePrefix(i);
+			String name = prefix == null || prefix.isEmpty() ? reader.getAttributeLocalName(i) : prefix + ":"
+					+ reader.getAttributeLocalName(i);
+
+			if (name.equals(attribute)) {
+				return reader.getAttributeValue(i);
+			}
+		}
+
+		return "";
+	}
+
+	/**
+	 * The state of a query during a run, which receives the events of the
+	 * parser.
+	 */
+	private static abstract class Query {
+		/**
+		 * The value found, or null.
+		 */
+		String value;
+
+		/**
+		 * True if the value was found, or if it cannot be found anymore.
+		 */
+		boolean done;
+
+		/**
+		 * If not null, collects the text inside the element at the given
+		 * depth.
+		 */
+		StringBuilder text;
+		int textDepth;
+
+		abstract void startElement(XMLStreamReader reader, String tag, int depth);
+
+		void endElement(int depth) {
+			if (text != null && depth == textDepth) {
+				value = text.toString();
+				text = null;
+				done = true;
+			}
+		}
+
+		void characters(XMLStreamReader reader) {
+			if (text != null) {
+				text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+			}
+		}
+
+		void collectText(int depth) {
+			text = new StringBuilder();
+			textDepth = depth;
+		}
+	}
+
+	private static class AttributeQuery extends Query {
+		private final String section;
+		private final String attribute;
+
+		AttributeQuery(String section, String attribute) {
+			this.section = section;
+			this.attribute = attribute;
+		}
+
+		@Override
+		void startElement(XMLStreamReader reader, String tag, int depth) {
+			if (tag.equals(section)) {
+				value = getAttribute(reader, attribute);
+				done = true;
+			}
+		}
+	}
+
+	private static class SectionValueQuery extends Query {
+		private final String section;
+
+		SectionValueQuery(String section) {
+			this.section = section;
+		}
+
+		@Override
+		void startElement(XMLStreamReader reader, String tag, int depth) {
+			if (text == null && tag.equals(section)) {
+				collectText(depth);
+			}
+		}
+	}
+
+	private static class TextQuery extends Query {
+		private final String[] tagChain;
+
+		/**
+		 * Number of tags of the chain that were found.
+		 */
+		private int matched;
+
+		TextQuery(String[] tagChain) {
+			this.tagChain = tagChain;
+		}
+
+		@Override
+		void startElement(XMLStreamReader reader, String tag, int depth) {
+			// Only the children of the last element found are considered
+			if (text != null || depth != matched + 1 || !tag.equals(tagChain[matched])) {
+				return;
+			}
+
+			matched++;
+			if (matched == tagChain.length) {
+				collectText(depth);
+			}
+		}
+
+		@Override
+		void endElement(int depth) {
+			super.endElement(depth);
+
+			// The first element with the tag did not have the next tag
+			if (!done && depth == matched && matched > 0) {
+				done = true;
+			}
+		}
+	}
+}
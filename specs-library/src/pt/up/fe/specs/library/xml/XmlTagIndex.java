@@ -0,0 +1,275 @@
+/**
+ * Copyright 2015 SPeCS.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.specs.library.xml;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import pt.up.fe.specs.library.Log;
+import pt.up.fe.specs.library.XmlUtils;
+
+/**
+ * Index of the elements of a Document, by tag and by tag-chain from the root,
+ * for documents that are queried many times.
+ * 
+ * <p>
+ * The index is built with a single traversal of the document, after which
+ * lookups are hash lookups instead of traversals of the DOM. Lists of elements
+ * are in document order.
+ * 
+ * <p>
+ * The index is immutable, and is not updated if the document is modified
+ * after it was built.
+ * 
+ */
+public class XmlTagIndex {
+
+	private static final char PATH_SEPARATOR = '/';
+
+	private final Document document;
+
+	/**
+	 * Elements indexed by tag.
+	 */
+	private final Map<String, List<Element>> elementsByTag;
+
+	/**
+	 * Elements indexed by the tags from the root to the element, separated by
+	 * '/'.
+	 */
+	private final Map<String, List<Element>> elementsByPath;
+
+	/**
+	 * Element children of each element, indexed by tag.
+	 */
+	private final Map<Element, Map<String, List<Element>>> childrenByTag;
+
+	private XmlTagIndex(Document document, Map<String, List<Element>> elementsByTag,
+			Map<String, List<Element>> elementsByPath, Map<Element, Map<String, List<Element>>> childrenByTag) {
+		this.document = document;
+		this.elementsByTag = elementsByTag;
+		this.elementsByPath = elementsByPath;
+		this.childrenByTag = childrenByTag;
+	}
+
+	/**
+	 * Builds an index of the elements of the given document.
+	 * 
+	 * @param document
+	 * @return
+	 */
+	public static XmlTagIndex build(Document document) {
+		Map<String, List<Element>> elementsByTag = new HashMap<>();
+		Map<String, List<Element>> elementsByPath = new HashMap<>();
+		// Elements are compared by identity, DOM nodes do not define equals
+		Map<Element, Map<String, List<Element>>> childrenByTag = new IdentityHashMap<>();
+
+		Element root = document.getDocumentElement();
+		if (root != null) {
+			Deque<Element> elements = new ArrayDeque<>();
+			Deque<String> paths = new ArrayDeque<>();
+			elements.push(root);
+			paths.push(root.getTagName());
+
+			// Pre-order traversal, children are pushed in reverse order
+			while (!elements.isEmpty()) {
+				Element element = elements.pop();
+				String path = paths.pop();
+
+				elementsByTag.computeIfAbsent(element.getTagName(), tag -> new ArrayList<>()).add(element);
+				elementsByPath.computeIfAbsent(path, key -> new ArrayList<>()).add(element);
+
+				Map<String, List<Element>> children = null;
+				for (Node child = element.getLastChild(); child != null; child = child.getPreviousSibling()) {
+					if (child.getNodeType() == Node.ELEMENT_NODE) {
+						Element childElement = (Element) child;
+						elements.push(childElement);
+						paths.push(path + PATH_SEPARATOR + childElement.getTagName());
+
+						if (children == null) {
+							children = new HashMap<>();
+						}
+						children.computeIfAbsent(childElement.getTagName(), tag -> new ArrayList<>()).add(childElement);
+					}
+				}
+
+				if (children != null) {
+					// Children were visited last to first
+					children.values().forEach(Collections::reverse);
+					childrenByTag.put(element, freeze(children));
+				}
+			}
+		}
+
+		return new XmlTagIndex(document, freeze(elementsByTag), freeze(elementsByPath),
+				Collections.unmodifiableMap(childrenByTag));
+	}
+
+	private static Map<String, List<Element>> freeze(Map<String, List<Element>> map) {
+		for (Map.Entry<String, List<Element>> entry : map.entrySet()) {
+			ArrayList<Element> list = (ArrayList<Element>) entry.getValue();
+			list.trimToSize();
+			entry.setValue(Collections.unmodifiableList(list));
+		}
+
+		return Collections.unmodifiableMap(map);
+	}
+
+	public Document getDocument() {
+		return document;
+	}
+
+	/**
+	 * 
+	 * @param tag
+	 * @return the elements with the given tag, as Document.getElementsByTagName
+	 */
+	public List<Element> getElements(String tag) {
+		return elementsByTag.getOrDefault(tag, Collections.emptyList());
+	}
+
+	/**
+	 * 
+	 * @param tagChain
+	 *            tags from the root element to the elements
+	 * @return the elements found by following the tag-chain from the root
+	 */
+	public List<Element> getElementsAt(String... tagChain) {
+		return elementsByPath.getOrDefault(String.join(String.valueOf(PATH_SEPARATOR), tagChain),
+				Collections.emptyList());
+	}
+
+	/**
+	 * Indexed version of {@link XmlUtils#getNodes(Node, String)}, for elements
+	 * of the indexed document.
+	 * 
+	 * @param parent
+	 * @param tag
+	 * @return the element children of the given element that have the given tag
+	 */
+	public List<Element> getChildren(Element parent, String tag) {
+		Map<String, List<Element>> children = childrenByTag.get(parent);
+		if (children == null) {
+			return Collections.emptyList();
+		}
+
+		return children.getOrDefault(tag, Collections.emptyList());
+	}
+
+	/**
+	 * 
+	 * @param tag
+	 * @return the first element with the given tag
+	 */
+	public Optional<Element> getFirst(String tag) {
+		List<Element> elements = getElements(tag);
+		return elements.isEmpty() ? Optional.empty() : Optional.of(elements.get(0));
+	}
+
+	/**
+	 * Indexed version of {@link XmlUtils#getSection(Element, String)}, over
+	 * the whole document.
+	 * 
+	 * @param section
+	 * @return the first element with the given tag, or null if there is none
+	 */
+	public Element getSection(String section) {
+		List<Element> elements = getElements(section);
+		if (elements.isEmpty()) {
+			Log.info("Could not find section '" + section + "'");
+			return null;
+		}
+
+		return elements.get(0);
+	}
+
+	/**
+	 * Indexed version of {@link XmlUtils#getAttribute(Document, String, String)}.
+	 * 
+	 * @param section
+	 * @param attribute
+	 * @return the attribute of the first element with the given tag, or null if
+	 *         there is none
+	 */
+	public String getAttribute(String section, String attribute) {
+		Element element = getSection(section);
+		return element == null ? null : element.getAttribute(attribute);
+	}
+
+	/**
+	 * Indexed version of {@link XmlUtils#getSectionValue(Element, String)},
+	 * over the whole document.
+	 * 
+	 * @param section
+	 * @return the text content of the first element with the given tag, or null
+	 *         if there is none
+	 */
+	public String getSectionValue(String section) {
+		Element element = getSection(section);
+		return element == null ? null : element.getTextContent();
+	}
+
+	/**
+	 * Indexed version of {@link XmlUtils#getText(org.w3c.dom.NodeList, String...)},
+	 * starting at the root. As in XmlUtils, only the first child with each tag
+	 * is followed, so the text is not found if that child does not have the
+	 * next tag, even if other elements at the tag-chain exist (see
+	 * {@link #getElementsAt(String...)}).
+	 * 
+	 * @param tagChain
+	 * @return
+	 */
+	public String getText(String... tagChain) {
+		Element element = document.getDocumentElement();
+		if (tagChain.length == 0 || element == null || !element.getTagName().equals(tagChain[0])) {
+			throw newNotFound(tagChain);
+		}
+
+		for (int i = 1; i < tagChain.length; i++) {
+			List<Element> children = getChildren(element, tagChain[i]);
+			if (children.isEmpty()) {
+				throw newNotFound(tagChain);
+			}
+
+			element = children.get(0);
+		}
+
+		return element.getTextContent();
+	}
+
+	private static RuntimeException newNotFound(String[] tagChain) {
+		return new RuntimeException("Could not find a node with tag-chain '"
+				+ String.join(String.valueOf(PATH_SEPARATOR), tagChain) + "'");
+	}
+
+	/**
+	 * 
+	 * @return the tags in the document
+	 */
+	public Set<String> getTags() {
+		return elementsByTag.keySet();
+	}
+}